@@ -0,0 +1,126 @@
+package org.llmtoolkit.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.llmtoolkit.util.json.JSONRepair;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the single-pass {@link JSONRepair} with the regex-based {@link RegexJSONRepair} it replaced,
+ * on the inputs of {@code JSONRepairTest} and on a broken model answer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONRepairBenchmark {
+
+    public enum Case {
+        REPAIR_CASES(
+                "{key: value}",
+                "{'key': 'value'}",
+                "{\"key\": \"value\",}",
+                "{\nkey\n:\nvalue\n}",
+                "{ key :  value }",
+                "{\"key\":\"value\nwith\nnewlines\"}",
+                "{\"key\": \"value\\nwith\\nnewlines\"}",
+                "{\"key\":\"line1\\nline2\"}",
+                "{key: value,}",
+                "{\"key\":}",
+                "{\"key\",}",
+                "{\"key\":",
+                "[1, 2, 3,]",
+                "[1 2 3]",
+                "[,1,2,,3,]",
+                "{key: {nested: value}}",
+                "[{key: value}, {key: value,}]",
+                "{key: 'value', \"key2\": value2}",
+                "{key: 123}",
+                "{key: -12.34}",
+                "{key: true}",
+                "{key: false}",
+                "{key: null}",
+                "{}",
+                "[]",
+                "[{}]",
+                "{\"arr\":[]}",
+                "{\"key\": \"value\\nwith\\tescapes\"}",
+                "{key: [1,2,], nested: {a: 'b',}, 'quoted': true, \"double\": null,}"),
+        MARKDOWN_AND_COMMENTS(
+                "```json\n{\"key\": \"value\"}\n```",
+                "```javascript\n{\"key\": \"value\"}\n```",
+                "// This is a comment\n{\"key\": \"value\"}",
+                "/* Multi-line\ncomment */\n{\"key\": \"value\"}",
+                "```json\n// Comment\n{\"key\": \"value\"}\n```"),
+        COMPLEX_STRUCTURES(
+                """
+                {
+                    "array_of_objects": [
+                        {"id": 1, "value": "first"},
+                        {"id": 2, "value": "second",},
+                    ],
+                    "object_with_arrays": {
+                        "numbers": [1,2,3],
+                        "strings": ["a","b","c",],
+                        "mixed": [1,"two",{"three":3},null,true,false],
+                    }
+                }"""),
+        LARGE(largeInput()),
+        BROKEN_ANSWER(Payloads.brokenJson(Payloads.Size.KB_10));
+
+        final List<String> inputs;
+
+        Case(String... inputs) {
+            this.inputs = List.of(inputs);
+        }
+    }
+
+    @Param
+    public Case repairCase;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        for (String input : repairCase.inputs) {
+            if (!mapper.readTree(JSONRepair.repairJSON(input))
+                    .equals(mapper.readTree(RegexJSONRepair.repairJSON(input)))) {
+                throw new IllegalStateException("Implementations disagree on: " + input);
+            }
+        }
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) {
+        for (String input : repairCase.inputs) {
+            blackhole.consume(JSONRepair.repairJSON(input));
+        }
+    }
+
+    @Benchmark
+    public void regexBaseline(Blackhole blackhole) {
+        for (String input : repairCase.inputs) {
+            blackhole.consume(RegexJSONRepair.repairJSON(input));
+        }
+    }
+
+    // The input of JSONRepairTest.testPerformance, with fixed values
+    private static String largeInput() {
+        StringBuilder large = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < 10000; i++) {
+            large.append("{\"id\":")
+                    .append(i)
+                    .append(",\"name\":\"item")
+                    .append(i)
+                    .append("\"")
+                    .append(",\"value\":")
+                    .append(i / 10000.0)
+                    .append("},");
+        }
+        return large.append("]}").toString();
+    }
+}
@@ -0,0 +1,49 @@
+package org.llmtoolkit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.llmtoolkit.benchmarks.Payloads.Size;
+import org.llmtoolkit.examples.ProgrammingLanguages;
+import org.llmtoolkit.util.json.JSONRepair;
+import org.llmtoolkit.util.json.JsonUtils;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonParsingBenchmark {
+
+    @Param({"SMALL", "KB_10", "MB_1"})
+    public Size size;
+
+    private String answer;
+    private String brokenJson;
+
+    @Setup
+    public void setUp() {
+        answer = Payloads.answer(size);
+        brokenJson = Payloads.brokenJson(size);
+    }
+
+    @Benchmark
+    public String trimJson() {
+        return JsonUtils.trimJson(answer);
+    }
+
+    @Benchmark
+    public String repairJson() {
+        return JSONRepair.repairJSON(brokenJson);
+    }
+
+    @Benchmark
+    public ProgrammingLanguages parseAnswer() {
+        return JsonUtils.parseJsonOrYamlObject(answer, ProgrammingLanguages.class);
+    }
+
+    @Benchmark
+    public ProgrammingLanguages parseBrokenJson() {
+        return JsonUtils.parseJsonOrYamlObject(brokenJson, ProgrammingLanguages.class);
+    }
+}
@@ -0,0 +1,133 @@
+package org.llmtoolkit.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.llmtoolkit.core.annotations.Cue;
+import org.llmtoolkit.examples.ProgrammingLanguages;
+import org.llmtoolkit.examples.ProgrammingLanguages.Language;
+import org.llmtoolkit.examples.ProgrammingLanguages.Reason;
+import org.llmtoolkit.examples.ProgrammingLanguages.ReasonType;
+import org.llmtoolkit.util.json.JsonUtils;
+
+/**
+ * Deterministic model answers of a given size, shaped like the answers the examples get from real models
+ */
+public class Payloads {
+
+    public enum Size {
+        SMALL(500),
+        KB_10(10_000),
+        MB_1(1_000_000);
+
+        final int chars;
+
+        Size(int chars) {
+            this.chars = chars;
+        }
+    }
+
+    private static final String[] WORDS = {
+        "fast",
+        "safe",
+        "mature",
+        "ecosystem",
+        "tooling",
+        "concise",
+        "portable",
+        "typed",
+        "garbage",
+        "collected",
+        "community",
+        "\"quoted\"",
+        "libraries",
+        "backslash\\path",
+        "unicode \u00e9",
+        "{braces}",
+        "[brackets]",
+        "colon: yes"
+    };
+
+    public static ProgrammingLanguages languages(Size size) {
+        Random random = new Random(42);
+        int languageChars =
+                JsonUtils.formatJsonObject(language(new Random(42), 0)).length();
+        int count = Math.max(1, size.chars / languageChars);
+        List<Language> languages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            languages.add(language(random, i));
+        }
+        return new ProgrammingLanguages(languages);
+    }
+
+    /**
+     * Fenced JSON surrounded by prose, as most models answer
+     */
+    public static String answer(Size size) {
+        return "Sure! Here are the languages you asked for:\n\n```json\n"
+                + JsonUtils.formatJsonObject(languages(size))
+                + "\n```\n\nLet me know if you need anything else {or more languages}.";
+    }
+
+    /**
+     * JSON with the usual model mistakes: unquoted keys, single quotes, trailing commas and a truncated end
+     */
+    public static String brokenJson(Size size) {
+        String json = JsonUtils.formatJsonObject(languages(size))
+                .replaceAll("\"(\\w+)\" :", "$1:")
+                .replace("\"reasonType\" : \"VALID\"", "'reasonType': 'VALID'")
+                .replace("\n  }", ",\n  }")
+                .replace("]", ",]");
+        return json.substring(0, json.length() - json.length() / 50);
+    }
+
+    private static Language language(Random random, int index) {
+        List<Reason> reasons = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            reasons.add(new Reason(
+                    7 - 2 * i,
+                    phrase(random, 4),
+                    ReasonType.values()[random.nextInt(ReasonType.values().length)],
+                    phrase(random, 12),
+                    random.nextBoolean() ? null : phrase(random, 6)));
+        }
+        return new Language("Language " + index, phrase(random, 15), reasons);
+    }
+
+    private static String phrase(Random random, int words) {
+        StringBuilder phrase = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                phrase.append(' ');
+            }
+            phrase.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return phrase.toString();
+    }
+
+    @Cue("Deeply nested output schema")
+    public record Nested(@Cue("Top level") String name, List<Level1> items, Level1 main) {
+        public record Level1(String name, List<Level2> items, Status status) {}
+
+        public record Level2(@Cue("Second level") String name, List<Level3> items) {}
+
+        public record Level3(String name, List<Level4> items, Status status) {}
+
+        public record Level4(@Cue("Fourth level") String name, List<Level5> items) {}
+
+        public record Level5(String name, List<Level6> items, Status status) {}
+
+        public record Level6(@Cue("Sixth level") String name, List<Level7> items) {}
+
+        public record Level7(String name, List<Level8> items, Status status) {}
+
+        public record Level8(@Cue("Leaf") String name, int value, Status status) {}
+
+        @Cue("Processing status")
+        public enum Status {
+            NEW,
+            DONE,
+            FAILED
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.llmtoolkit.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.llmtoolkit.core.JteTemplateProcessor;
+import org.llmtoolkit.core.annotations.PP;
+import org.llmtoolkit.core.annotations.PT;
+import org.llmtoolkit.examples.ProgrammingLanguages;
+import org.llmtoolkit.examples.template.TemplatedPromptExamples.ChooseFrom;
+import org.llmtoolkit.util.ClassToString;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Work done for every prompt before the model is called: template rendering and output schema rendering
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBenchmark {
+
+    interface PromptService {
+        @PT(templatePath = "programming_languages_prompt.jte")
+        String languages(
+                @PP("count") int count,
+                @PP("examplesCount") int examplesCount,
+                @PP("chooseFrom") ChooseFrom chooseFrom);
+    }
+
+    private final JteTemplateProcessor templateProcessor = JteTemplateProcessor.create();
+    private final Object[] args = {
+        3, 2, new ChooseFrom("popular", List.of("Java", "Kotlin", "Go", "Rust", "Python", "TypeScript", "C#", "Scala"))
+    };
+    private Method method;
+    private Function<Object[], String> renderer;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        method = PromptService.class.getMethod("languages", int.class, int.class, ChooseFrom.class);
+        renderer = templateProcessor.prepareRenderer(method);
+    }
+
+    @Benchmark
+    public String preparePrompt() {
+        return templateProcessor.preparePrompt(method, args);
+    }
+
+    @Benchmark
+    public String preparedRenderer() {
+        return renderer.apply(args);
+    }
+
+    @Benchmark
+    public String recordsOfProgrammingLanguages() {
+        return ClassToString.onlyRecords(ProgrammingLanguages.class);
+    }
+
+    @Benchmark
+    public String recordsOfNested() {
+        return ClassToString.onlyRecords(Payloads.Nested.class);
+    }
+}
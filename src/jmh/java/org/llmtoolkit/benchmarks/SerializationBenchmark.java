@@ -0,0 +1,36 @@
+package org.llmtoolkit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.llmtoolkit.benchmarks.Payloads.Size;
+import org.llmtoolkit.examples.ProgrammingLanguages;
+import org.llmtoolkit.util.json.SerObject;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"SMALL", "KB_10", "MB_1"})
+    public Size size;
+
+    private SerObject<ProgrammingLanguages> languages;
+
+    @Setup
+    public void setUp() {
+        languages = SerObject.from(Payloads.languages(size));
+    }
+
+    @Benchmark
+    public String toYaml() {
+        return languages.toYaml();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return languages.toJson();
+    }
+}
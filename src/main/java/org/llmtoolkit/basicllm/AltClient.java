@@ -1,41 +1,90 @@
 package org.llmtoolkit.basicllm;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import org.springframework.http.HttpStatusCode;
-import org.springframework.http.MediaType;
-import org.springframework.web.client.RestClient;
+import dev.langchain4j.exception.HttpException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.Builder;
+import lombok.NonNull;
 
 /**
- * Alternative to Langchain4j client that properly handles timeouts for OpenAI-compatible providers.
- * While Langchain4j's {@link OpenAiChatModelProvider} supports timeouts,
- * it only works with OpenAI itself. Other providers using the OpenAI-compatible API (Inference.net, DeepSeek, etc.)
- * need this alternative implementation if the requests exceed 60 sec.
+ * Alternative to Langchain4j client for OpenAI-compatible providers (Inference.net, DeepSeek, etc.).
+ * -
+ * The timeout of a call, in seconds, is sent to the provider and also bounds the call on our side:
+ * waiting for a free connection and for the response to begin share it, and exceeding it throws
+ * an exception caused by a {@link HttpTimeoutException}. Without a timeout a call waits as long as the server.
+ * A streamed answer may keep arriving after the timeout, once it has begun.
+ * -
+ * A client keeps its connections alive and reuses them (HTTP/2 where the server supports it),
+ * so create one per endpoint and share it.
  */
 @SuppressWarnings("unused")
 public class AltClient {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-    private final RestClient restClient;
+    private static final ObjectMapper DEFAULT_OBJECT_MAPPER = new ObjectMapper();
+    private static final int DEFAULT_MAX_CONNECTIONS = 64;
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final String SSE_DATA_PREFIX = "data:";
+    private static final String SSE_DONE = "[DONE]";
 
-    private AltClient(RestClient restClient) {
-        this.restClient = restClient;
+    private final HttpClient httpClient;
+    private final URI completionsUri;
+    private final String authorization;
+    private final Semaphore connections;
+    private final ChatRequestEncoder encoder;
+    private final ChatCompletionDecoder decoder;
+
+    /**
+     * @param maxConnections maximum number of requests in flight, further requests wait for a free connection
+     * @param http2          whether to negotiate HTTP/2, true by default
+     * @param objectMapper   mapper whose JsonFactory encodes requests and decodes responses, a shared one by default
+     */
+    @Builder
+    private AltClient(
+            @NonNull String baseUrl,
+            @NonNull String apiKey,
+            Integer maxConnections,
+            Duration connectTimeout,
+            Boolean http2,
+            ObjectMapper objectMapper) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(http2 == null || http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout == null ? DEFAULT_CONNECT_TIMEOUT : connectTimeout)
+                .build();
+        this.completionsUri = URI.create(baseUrl.replaceAll("/+$", "") + "/chat/completions");
+        this.authorization = "Bearer " + apiKey;
+        this.connections = new Semaphore(maxConnections == null ? DEFAULT_MAX_CONNECTIONS : maxConnections, true);
+        JsonFactory jsonFactory = (objectMapper == null ? DEFAULT_OBJECT_MAPPER : objectMapper).getFactory();
+        this.encoder = new ChatRequestEncoder(jsonFactory);
+        this.decoder = new ChatCompletionDecoder(jsonFactory);
     }
 
     public static AltClient createClient(String baseUrl, String apiKey) {
-        RestClient restClient = RestClient.builder()
-                .baseUrl(baseUrl)
-                .defaultHeader("Authorization", "Bearer " + apiKey)
-                .defaultHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
-                .build();
-        return new AltClient(restClient);
+        return AltClient.builder().baseUrl(baseUrl).apiKey(apiKey).build();
     }
 
+    public record Usage(int promptTokens, int completionTokens, int totalTokens) {}
+
+    /**
+     * @param usage token counts reported by the provider, null if it reported none
+     */
+    public record Answer(String content, Usage usage) {}
+
     public String answer(
             String prompt,
             String model,
@@ -44,53 +93,224 @@ public class AltClient {
             Integer maxTokens,
             Integer thinkingTokens,
             Integer timeout) {
+        return answerWithUsage(prompt, model, temperature, topP, maxTokens, thinkingTokens, timeout)
+                .content();
+    }
 
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", model);
-        if (timeout != null) requestBody.put("timeout", timeout);
-        if (temperature != null) requestBody.put("temperature", temperature);
-        if (topP != null) requestBody.put("top_p", topP);
-        if (thinkingTokens != null) requestBody.put("max_completion_tokens", thinkingTokens);
-        if (maxTokens != null) requestBody.put("max_tokens", maxTokens);
-        requestBody.put("stream", false);
-        List<Map<String, String>> messages = new ArrayList<>();
-        Map<String, String> message = new HashMap<>();
-        message.put("role", "user");
-        message.put("content", prompt);
-        messages.add(message);
-        requestBody.put("messages", messages);
-
-        String jsonResponse = restClient
-                .post()
-                .uri("/chat/completions")
-                .body(requestBody)
-                .retrieve()
-                .onStatus(HttpStatusCode::isError, (request, response) -> {
-                    String errorBody = new String(response.getBody().readAllBytes());
-                    throw new RuntimeException("API error code: " + response.getStatusCode() + "\nBody: " + errorBody);
-                })
-                .body(String.class);
-
-        return extractAnswer(jsonResponse);
+    /**
+     * Same as {@link #answer}, also returning the token usage.
+     * The response is decoded while it is read from the connection, without buffering it.
+     */
+    public Answer answerWithUsage(
+            String prompt,
+            String model,
+            Double temperature,
+            Double topP,
+            Integer maxTokens,
+            Integer thinkingTokens,
+            Integer timeout) {
+
+        Long deadline = deadline(timeout);
+        acquireConnection(deadline);
+        try {
+            HttpRequest request = createRequest(
+                    prompt, model, temperature, topP, maxTokens, thinkingTokens, timeout, deadline, false);
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() >= 400) {
+                    throw apiError(response.statusCode(), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                return decoder.readAnswer(body);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Request to " + completionsUri + " failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + completionsUri, e);
+        } finally {
+            connections.release();
+        }
     }
 
-    private static String extractAnswer(String jsonResponse) {
-        JsonNode rootNode;
+    /**
+     * Streams the answer, passing content tokens to the callback as the server sends them.
+     * The callback runs on the HTTP client threads.
+     *
+     * @return future completed with the whole answer once the stream ends
+     */
+    public CompletableFuture<String> streamAnswer(
+            String prompt,
+            String model,
+            Double temperature,
+            Double topP,
+            Integer maxTokens,
+            Integer thinkingTokens,
+            Integer timeout,
+            Consumer<String> onToken) {
+
+        Long deadline = deadline(timeout);
+        acquireConnection(deadline);
         try {
-            rootNode = objectMapper.readTree(jsonResponse);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Error parsing response body: " + e.getMessage(), e);
+            HttpRequest request =
+                    createRequest(prompt, model, temperature, topP, maxTokens, thinkingTokens, timeout, deadline, true);
+            return httpClient
+                    .sendAsync(
+                            request,
+                            responseInfo -> responseInfo.statusCode() >= 400
+                                    ? BodySubscribers.mapping(
+                                            BodySubscribers.ofString(StandardCharsets.UTF_8), body -> {
+                                                throw apiError(responseInfo.statusCode(), body);
+                                            })
+                                    : BodySubscribers.fromLineSubscriber(
+                                            new ServerSentEventsSubscriber(decoder, onToken),
+                                            ServerSentEventsSubscriber::answer,
+                                            StandardCharsets.UTF_8,
+                                            null))
+                    .thenApply(HttpResponse::body)
+                    .whenComplete((answer, error) -> connections.release());
+        } catch (RuntimeException e) {
+            connections.release();
+            throw e;
         }
+    }
+
+    /**
+     * Cold publisher of the answer tokens: every subscription sends the prompt again
+     */
+    public Flow.Publisher<String> publishAnswer(
+            String prompt,
+            String model,
+            Double temperature,
+            Double topP,
+            Integer maxTokens,
+            Integer thinkingTokens,
+            Integer timeout) {
+        return subscriber -> {
+            SubmissionPublisher<String> publisher = new SubmissionPublisher<>();
+            publisher.subscribe(subscriber);
+            try {
+                streamAnswer(prompt, model, temperature, topP, maxTokens, thinkingTokens, timeout, publisher::submit)
+                        .whenComplete((answer, error) -> {
+                            if (error != null) {
+                                publisher.closeExceptionally(error);
+                            } else {
+                                publisher.close();
+                            }
+                        });
+            } catch (RuntimeException e) {
+                publisher.closeExceptionally(e);
+            }
+        };
+    }
+
+    private HttpRequest createRequest(
+            String prompt,
+            String model,
+            Double temperature,
+            Double topP,
+            Integer maxTokens,
+            Integer thinkingTokens,
+            Integer timeout,
+            Long deadline,
+            boolean stream) {
+
+        byte[] body = encoder.encode(
+                new ChatRequestEncoder.RequestParameters(
+                        model, temperature, topP, maxTokens, thinkingTokens, timeout, stream),
+                prompt);
+        HttpRequest.Builder request = HttpRequest.newBuilder(completionsUri)
+                .header("Authorization", authorization)
+                .header("Content-Type", "application/json")
+                .header("Accept", stream ? "text/event-stream" : "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        if (deadline != null) {
+            // The time left after waiting for a connection, at least a millisecond as zero is rejected
+            request.timeout(Duration.ofNanos(Math.max(1_000_000, deadline - System.nanoTime())));
+        }
+        return request.build();
+    }
+
+    // System.nanoTime() by which the call must have a response, null if it may wait indefinitely
+    private static Long deadline(Integer timeout) {
+        return timeout == null ? null : System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+    }
+
+    private void acquireConnection(Long deadline) {
+        try {
+            if (deadline == null) {
+                connections.acquire();
+            } else if (!connections.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new RuntimeException(
+                        "No connection to " + completionsUri + " became free in time",
+                        new HttpTimeoutException("timed out waiting for a connection"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a connection to " + completionsUri, e);
+        }
+    }
+
+    private static RuntimeException apiError(int statusCode, String body) {
+        return new HttpException(statusCode, "API error code: " + statusCode + "\nBody: " + body);
+    }
+
+    /**
+     * Decodes {@code data:} lines of a chat completion stream, handing over {@code choices[0].delta.content}
+     */
+    private static class ServerSentEventsSubscriber implements Flow.Subscriber<String> {
+        private final ChatCompletionDecoder decoder;
+        private final Consumer<String> onToken;
+        private final StringBuilder answer = new StringBuilder();
+        private RuntimeException failure;
+
+        ServerSentEventsSubscriber(ChatCompletionDecoder decoder, Consumer<String> onToken) {
+            this.decoder = decoder;
+            this.onToken = onToken;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        /*
+         * Subscribers must not throw, so a failure is kept until the stream ends and thrown from answer(),
+         * which completes the response future exceptionally
+         */
+        @Override
+        public void onNext(String line) {
+            // Blank lines separate events, lines starting with ':' are keep-alive comments
+            if (failure != null || !line.startsWith(SSE_DATA_PREFIX)) {
+                return;
+            }
+            String data = line.substring(SSE_DATA_PREFIX.length()).strip();
+            if (data.isEmpty() || data.equals(SSE_DONE)) {
+                return;
+            }
+            try {
+                String token = decoder.readDeltaContent(data);
+                if (token != null && !token.isEmpty()) {
+                    answer.append(token);
+                    onToken.accept(token);
+                }
+            } catch (IOException e) {
+                failure = new RuntimeException("Error parsing stream chunk: " + data, e);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {}
 
-        if (rootNode.has("choices")
-                && rootNode.get("choices").isArray()
-                && !rootNode.get("choices").isEmpty()
-                && rootNode.get("choices").get(0).has("message")
-                && rootNode.get("choices").get(0).get("message").has("content")) {
+        @Override
+        public void onComplete() {}
 
-            return rootNode.get("choices").get(0).get("message").get("content").asText();
-        } else {
-            throw new RuntimeException("Unexpected response format: " + jsonResponse);
+        String answer() {
+            if (failure != null) {
+                throw failure;
+            }
+            return answer.toString();
         }
     }
 }
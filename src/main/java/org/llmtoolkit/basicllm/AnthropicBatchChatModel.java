@@ -0,0 +1,128 @@
+package org.llmtoolkit.basicllm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * Anthropic Message Batches API: the request lines are sent in the body of the batch,
+ * and the results are downloaded as JSONL from the batch's results url once it has ended.
+ */
+public class AnthropicBatchChatModel extends BatchChatModel {
+    private static final String DEFAULT_BASE_URL = "https://api.anthropic.com/v1";
+    private static final String API_VERSION = "2023-06-01";
+    // Same default as Langchain4j's AnthropicChatModel, the API requires max_tokens
+    private static final int DEFAULT_MAX_TOKENS = 1024;
+
+    private final String baseUrl;
+    private final String apiKey;
+
+    /**
+     * @param pollInterval    delay before the second poll, doubled after every poll
+     * @param maxPollInterval upper bound of the delay between polls
+     * @param maxWait         how long to wait for a batch before giving up
+     */
+    @Builder
+    private AnthropicBatchChatModel(
+            String baseUrl,
+            @NonNull String apiKey,
+            @NonNull BasicLLM llm,
+            Duration pollInterval,
+            Duration maxPollInterval,
+            Duration maxWait) {
+        super(llm, pollInterval, maxPollInterval, maxWait);
+        this.baseUrl = (baseUrl == null ? DEFAULT_BASE_URL : baseUrl).replaceAll("/+$", "");
+        this.apiKey = apiKey;
+    }
+
+    @Override
+    public String submit(Map<String, String> promptsByCustomId) {
+        ObjectNode batch = objectMapper.createObjectNode();
+        ArrayNode requests = batch.putArray("requests");
+        promptsByCustomId.forEach((customId, prompt) -> requests.add(requestLine(customId, prompt)));
+
+        return sendForJson(request(URI.create(baseUrl + "/messages/batches"))
+                        .header("Content-Type", "application/json")
+                        .POST(BodyPublishers.ofString(json(batch), StandardCharsets.UTF_8))
+                        .build())
+                .path("id")
+                .asText();
+    }
+
+    @Override
+    ObjectNode requestLine(String customId, String prompt) {
+        AnthropicChatModelProvider.validate(llm);
+
+        ObjectNode params = objectMapper.createObjectNode();
+        params.put("model", llm.getModel());
+        params.put("max_tokens", llm.getMaxTokens() == null ? DEFAULT_MAX_TOKENS : llm.getMaxTokens());
+        params.putArray("messages").addObject().put("role", "user").put("content", prompt);
+        if (llm.getTemperature() != null) params.put("temperature", llm.getTemperature());
+        if (llm.getTopP() != null) params.put("top_p", llm.getTopP());
+        if (llm.isThinking()) {
+            params.putObject("thinking").put("type", "enabled").put("budget_tokens", llm.getThinkingTokens());
+        }
+
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("custom_id", customId);
+        line.set("params", params);
+        return line;
+    }
+
+    @Override
+    BatchState poll(String batchId) {
+        JsonNode batch = sendForJson(request(URI.create(baseUrl + "/messages/batches/" + batchId))
+                .GET()
+                .build());
+        String status = batch.path("processing_status").asText();
+        boolean isEnded = status.equals("ended");
+        if (isEnded && !batch.hasNonNull("results_url")) {
+            throw new RuntimeException("Batch " + batchId + " ended without results: " + batch);
+        }
+        return new BatchState(
+                status, isEnded, isEnded ? List.of(batch.get("results_url").asText()) : List.of());
+    }
+
+    @Override
+    String download(String resultsUrl) {
+        return send(request(URI.create(resultsUrl)).GET().build());
+    }
+
+    @Override
+    BatchResult parseResult(JsonNode line) {
+        String customId = line.path("custom_id").asText();
+        JsonNode result = line.path("result");
+        String type = result.path("type").asText();
+        return switch (type) {
+            case "succeeded" -> new BatchResult(customId, text(result.path("message")), null);
+            case "errored" ->
+                new BatchResult(customId, null, result.path("error").toString());
+            // canceled or expired
+            default -> new BatchResult(customId, null, "Request " + type);
+        };
+    }
+
+    // Thinking blocks are skipped, as Langchain4j does for synchronous answers
+    private static String text(JsonNode message) {
+        StringBuilder text = new StringBuilder();
+        for (JsonNode block : message.path("content")) {
+            if (block.path("type").asText().equals("text")) {
+                text.append(block.path("text").asText());
+            }
+        }
+        return text.toString();
+    }
+
+    private HttpRequest.Builder request(URI uri) {
+        return HttpRequest.newBuilder(uri).header("x-api-key", apiKey).header("anthropic-version", API_VERSION);
+    }
+}
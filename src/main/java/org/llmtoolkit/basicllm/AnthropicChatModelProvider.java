@@ -1,26 +1,71 @@
 package org.llmtoolkit.basicllm;
 
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.ModelProvider;
 import dev.langchain4j.model.anthropic.AnthropicChatModel;
+import dev.langchain4j.model.chat.Capability;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import lombok.EqualsAndHashCode;
+import org.llmtoolkit.util.PromptCaching;
 
+@EqualsAndHashCode
 public class AnthropicChatModelProvider implements ChatModelProvider {
     private final String apiKey;
+    private final boolean isToCachePromptPrefix;
 
     public AnthropicChatModelProvider(String apiKey) {
+        this(apiKey, false);
+    }
+
+    /**
+     * @param isToCachePromptPrefix whether to cache the part of prompts before a {@link PromptCaching#BREAKPOINT}.
+     *                              Cache writes cost more than regular input tokens, cache reads much less,
+     *                              so it pays off for prefixes repeated within the cache lifetime of 5 minutes.
+     */
+    public AnthropicChatModelProvider(String apiKey, boolean isToCachePromptPrefix) {
         this.apiKey = apiKey;
+        this.isToCachePromptPrefix = isToCachePromptPrefix;
     }
 
     @Override
     public ChatModel createChatModel(BasicLLM llm) {
+        validate(llm);
+
+        AnthropicChatModel.AnthropicChatModelBuilder builder =
+                AnthropicChatModel.builder().modelName(llm.getModel()).apiKey(apiKey);
+
+        if (llm.isThinking()) builder.thinkingType("enabled");
+        if (llm.getMaxTokens() != null) builder.maxTokens(llm.getMaxTokens());
+        if (llm.getThinkingTokens() != null) builder.thinkingBudgetTokens(llm.getThinkingTokens());
+        if (llm.getTimeout() != null) builder.timeout(Duration.ofSeconds(llm.getTimeout()));
+        if (llm.getTemperature() != null) builder.temperature(llm.getTemperature());
+        if (llm.getTopP() != null) builder.topP(llm.getTopP());
+        if (!isToCachePromptPrefix) {
+            return builder.build();
+        }
+        builder.cacheSystemMessages(true);
+        return new PromptPrefixChatModel(builder.build());
+    }
+
+    /**
+     * Checks the configuration the same way for synchronous and batch requests
+     */
+    static void validate(BasicLLM llm) {
         if (llm.getReasoningEffort() != null) {
             throw new RuntimeException(
                     "Reasoning effort is not supported for Anthropic thinking mode, use thinking tokens instead");
         }
 
-        AnthropicChatModel.AnthropicChatModelBuilder builder =
-                AnthropicChatModel.builder().modelName(llm.getModel()).apiKey(apiKey);
-
         if (llm.isThinking() && (llm.getThinkingTokens() == null || llm.getMaxTokens() == null)) {
             throw new RuntimeException("Max tokens and thinking tokens must be set for thinking mode");
         }
@@ -32,14 +77,77 @@ public class AnthropicChatModelProvider implements ChatModelProvider {
         if (llm.isThinking() && llm.getMaxTokens() <= llm.getThinkingTokens()) {
             throw new RuntimeException("Max tokens must be greater than thinking tokens");
         }
+    }
 
-        if (llm.isThinking()) builder.thinkingType("enabled");
-        if (llm.getMaxTokens() != null) builder.maxTokens(llm.getMaxTokens());
-        if (llm.getThinkingTokens() != null) builder.thinkingBudgetTokens(llm.getThinkingTokens());
-        if (llm.getTimeout() != null) builder.timeout(Duration.ofSeconds(llm.getTimeout()));
-        if (llm.getTemperature() != null) builder.temperature(llm.getTemperature());
-        if (llm.getTopP() != null) builder.topP(llm.getTopP());
+    /**
+     * Batch counterpart of {@link #createChatModel}, for answering many prompts at a lower price
+     */
+    public AnthropicBatchChatModel createBatchChatModel(BasicLLM llm) {
+        return AnthropicBatchChatModel.builder().apiKey(apiKey).llm(llm).build();
+    }
+
+    /**
+     * Moves the prefix of a user message before its {@link PromptCaching#BREAKPOINT} into a system message,
+     * where Langchain4j sets the cache-control breakpoint when system messages are cached
+     */
+    static ChatRequest withPromptPrefix(ChatRequest request) {
+        if (request.messages().stream().noneMatch(AnthropicChatModelProvider::hasPromptPrefix)) {
+            return request;
+        }
+        List<ChatMessage> messages = new ArrayList<>();
+        for (ChatMessage message : request.messages()) {
+            if (hasPromptPrefix(message)) {
+                PromptCaching.Split split = PromptCaching.split(((UserMessage) message).singleText());
+                if (!split.prefix().isBlank()) {
+                    messages.add(SystemMessage.from(split.prefix()));
+                }
+                messages.add(UserMessage.from(split.rest()));
+            } else {
+                messages.add(message);
+            }
+        }
+        return ChatRequest.builder()
+                .messages(messages)
+                .parameters(request.parameters())
+                .build();
+    }
+
+    private static boolean hasPromptPrefix(ChatMessage message) {
+        return message instanceof UserMessage user
+                && user.hasSingleText()
+                && PromptCaching.hasBreakpoint(user.singleText());
+    }
+
+    private static class PromptPrefixChatModel implements ChatModel, PromptCaching.BreakpointAware {
+        private final ChatModel delegate;
 
-        return builder.build();
+        PromptPrefixChatModel(ChatModel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ChatResponse chat(ChatRequest request) {
+            return delegate.chat(withPromptPrefix(request));
+        }
+
+        @Override
+        public ChatRequestParameters defaultRequestParameters() {
+            return delegate.defaultRequestParameters();
+        }
+
+        @Override
+        public List<ChatModelListener> listeners() {
+            return delegate.listeners();
+        }
+
+        @Override
+        public ModelProvider provider() {
+            return delegate.provider();
+        }
+
+        @Override
+        public Set<Capability> supportedCapabilities() {
+            return delegate.supportedCapabilities();
+        }
     }
 }
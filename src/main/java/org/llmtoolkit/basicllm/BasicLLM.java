@@ -4,13 +4,16 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import dev.langchain4j.model.chat.ChatModel;
 import lombok.Builder;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 
 /**
  * A simplified factory for creating ChatModel instances with commonly used parameters.
+ * Equal configurations share one model, see {@link ChatModelRegistry}.
  */
 @Getter
+@EqualsAndHashCode
 @Builder(toBuilder = true)
 public class BasicLLM implements Supplier<ChatModel> {
     @NonNull
@@ -27,6 +30,11 @@ public class BasicLLM implements Supplier<ChatModel> {
     private final Integer thinkingTokens;
     private final Integer timeout;
 
+    /**
+     * Client-side rate limits for the created models, none if null
+     */
+    private final RateGovernor rateGovernor;
+
     public static Supplier<ChatModel> of(String model, ChatModelProvider provider) {
         return Suppliers.memoize(() -> BasicLLM.builder()
                 .model(model)
@@ -58,9 +66,21 @@ public class BasicLLM implements Supplier<ChatModel> {
         }
     }
 
+    /**
+     * Returns the shared model for this configuration
+     */
     @Override
     @NonNull
     public ChatModel get() {
-        return provider.createChatModel(this);
+        return ChatModelRegistry.shared().get(this);
+    }
+
+    /**
+     * Creates a new model that is not shared with anyone
+     */
+    @NonNull
+    public ChatModel create() {
+        ChatModel model = provider.createChatModel(this);
+        return rateGovernor == null ? model : rateGovernor.govern(model);
     }
 }
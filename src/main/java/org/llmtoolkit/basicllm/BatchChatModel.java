@@ -0,0 +1,214 @@
+package org.llmtoolkit.basicllm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.langchain4j.exception.HttpException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Answers many prompts at once through a provider's batch endpoint, which is cheaper and has higher rate limits
+ * than the synchronous API, but takes minutes to hours.
+ * -
+ * Prompts are written as JSONL request lines keyed by a custom id, the batch is polled with exponential backoff
+ * until the provider ends it, and the results are mapped back to the prompts by their custom ids.
+ */
+public abstract class BatchChatModel {
+    static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_MAX_POLL_INTERVAL = Duration.ofMinutes(5);
+    // Providers promise results within 24 hours
+    private static final Duration DEFAULT_MAX_WAIT = Duration.ofHours(25);
+    private static final String CUSTOM_ID_PREFIX = "prompt-";
+
+    final BasicLLM llm;
+    final HttpClient httpClient = HttpClient.newHttpClient();
+    private final Duration pollInterval;
+    private final Duration maxPollInterval;
+    private final Duration maxWait;
+
+    BatchChatModel(BasicLLM llm, Duration pollInterval, Duration maxPollInterval, Duration maxWait) {
+        this.llm = llm;
+        this.pollInterval = pollInterval == null ? DEFAULT_POLL_INTERVAL : pollInterval;
+        this.maxPollInterval = maxPollInterval == null ? DEFAULT_MAX_POLL_INTERVAL : maxPollInterval;
+        this.maxWait = maxWait == null ? DEFAULT_MAX_WAIT : maxWait;
+    }
+
+    /**
+     * @param content the answer, null if the request failed
+     * @param error   why the request failed, null if it succeeded
+     */
+    public record BatchResult(String customId, String content, String error) {
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Provider specific progress of a batch
+     *
+     * @param resultLocations files or urls to download the results from once the batch has ended
+     */
+    record BatchState(String status, boolean isEnded, List<String> resultLocations) {}
+
+    /**
+     * Submits the prompts as one batch and waits for it to end
+     *
+     * @return results in the order of the prompts
+     */
+    public List<BatchResult> answer(List<String> prompts) {
+        Map<String, String> promptsByCustomId = new LinkedHashMap<>();
+        for (int i = 0; i < prompts.size(); i++) {
+            promptsByCustomId.put(CUSTOM_ID_PREFIX + i, prompts.get(i));
+        }
+        return new ArrayList<>(answer(promptsByCustomId).values());
+    }
+
+    /**
+     * Submits the prompts as one batch and waits for it to end
+     *
+     * @return results by custom id, in the order of the prompts.
+     * Requests the provider has not answered, e.g. because the batch expired, are failed results.
+     */
+    public Map<String, BatchResult> answer(Map<String, String> promptsByCustomId) {
+        String batchId = submit(promptsByCustomId);
+        Map<String, BatchResult> received = awaitResults(batchId);
+        Map<String, BatchResult> results = new LinkedHashMap<>();
+        for (String customId : promptsByCustomId.keySet()) {
+            BatchResult result = received.get(customId);
+            results.put(
+                    customId,
+                    result != null ? result : new BatchResult(customId, null, "No result in batch " + batchId));
+        }
+        return results;
+    }
+
+    /**
+     * Submits the prompts without waiting, see {@link #awaitResults}
+     *
+     * @return id of the batch
+     */
+    public abstract String submit(Map<String, String> promptsByCustomId);
+
+    /**
+     * Polls the batch with exponential backoff until it ends, then downloads its results
+     *
+     * @return results by custom id
+     */
+    public Map<String, BatchResult> awaitResults(String batchId) {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        Duration delay = pollInterval;
+        while (true) {
+            BatchState state = poll(batchId);
+            if (state.isEnded()) {
+                Map<String, BatchResult> results = new LinkedHashMap<>();
+                for (String location : state.resultLocations()) {
+                    results.putAll(parseResults(download(location), this::parseResult));
+                }
+                return results;
+            }
+            if (System.nanoTime() + delay.toNanos() - deadline > 0) {
+                throw new RuntimeException(
+                        "Batch " + batchId + " did not end within " + maxWait + ", last status: " + state.status());
+            }
+            sleep(delay);
+            delay = delay.multipliedBy(2).compareTo(maxPollInterval) > 0 ? maxPollInterval : delay.multipliedBy(2);
+        }
+    }
+
+    /**
+     * Writes one JSONL request line per prompt, in the provider's batch format
+     */
+    public void writeRequests(Map<String, String> promptsByCustomId, Path file) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> prompt : promptsByCustomId.entrySet()) {
+                writer.write(objectMapper.writeValueAsString(requestLine(prompt.getKey(), prompt.getValue())));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing batch requests to " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    abstract ObjectNode requestLine(String customId, String prompt);
+
+    abstract BatchState poll(String batchId);
+
+    abstract String download(String resultLocation);
+
+    abstract BatchResult parseResult(JsonNode resultLine);
+
+    String send(HttpRequest request) {
+        try {
+            HttpResponse<String> response =
+                    httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            if (response.statusCode() >= 400) {
+                throw new HttpException(
+                        response.statusCode(),
+                        "API error code: " + response.statusCode() + "\nBody: " + response.body());
+            }
+            return response.body();
+        } catch (IOException e) {
+            throw new RuntimeException("Request to " + request.uri() + " failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + request.uri(), e);
+        }
+    }
+
+    JsonNode sendForJson(HttpRequest request) {
+        String body = send(request);
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            throw new RuntimeException("Unexpected response format from " + request.uri() + ": " + body, e);
+        }
+    }
+
+    static String json(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsString(node);
+        } catch (IOException e) {
+            throw new RuntimeException("Error serializing request body: " + e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, BatchResult> parseResults(String jsonl, Function<JsonNode, BatchResult> parser) {
+        Map<String, BatchResult> results = new LinkedHashMap<>();
+        for (String line : jsonl.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                BatchResult result = parser.apply(objectMapper.readTree(line));
+                results.put(result.customId(), result);
+            } catch (IOException e) {
+                throw new RuntimeException("Unexpected batch result line: " + line, e);
+            }
+        }
+        return results;
+    }
+
+    private static void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a batch", e);
+        }
+    }
+}
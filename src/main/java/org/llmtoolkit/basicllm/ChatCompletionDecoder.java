@@ -0,0 +1,140 @@
+package org.llmtoolkit.basicllm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import org.llmtoolkit.basicllm.AltClient.Answer;
+import org.llmtoolkit.basicllm.AltClient.Usage;
+
+/**
+ * Pulls the few fields AltClient needs out of chat completion responses with a streaming parser.
+ * Everything else is skipped without being materialized, and responses are read straight from the connection.
+ */
+class ChatCompletionDecoder {
+    private final JsonFactory jsonFactory;
+
+    /**
+     * @param jsonFactory factory of an ObjectMapper, so that the rare error objects can be read as trees
+     */
+    ChatCompletionDecoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Reads {@code choices[0].message.content} and {@code usage} of a complete response
+     */
+    Answer readAnswer(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            Decoded decoded = readCompletion(parser, "message");
+            if (decoded.content == null) {
+                throw new RuntimeException("Unexpected response format: no choices[0].message.content");
+            }
+            return new Answer(decoded.content, decoded.usage);
+        }
+    }
+
+    /**
+     * Reads {@code choices[0].delta.content} of a stream chunk, null if the chunk carries no content
+     */
+    String readDeltaContent(String chunk) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(chunk)) {
+            return readCompletion(parser, "delta").content;
+        }
+    }
+
+    private static class Decoded {
+        String content;
+        Usage usage;
+    }
+
+    private static Decoded readCompletion(JsonParser parser, String messageField) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new RuntimeException("Unexpected response format: not a json object");
+        }
+        Decoded decoded = new Decoded();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("choices") && value == JsonToken.START_ARRAY) {
+                decoded.content = readFirstChoiceContent(parser, messageField);
+            } else if (field.equals("usage") && value == JsonToken.START_OBJECT) {
+                decoded.usage = readUsage(parser);
+            } else if (field.equals("error") && value != JsonToken.VALUE_NULL) {
+                // Some providers report failures inside a 200 response or a stream
+                throw new RuntimeException("API error: " + parser.readValueAsTree());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return decoded;
+    }
+
+    private static String readFirstChoiceContent(JsonParser parser, String messageField) throws IOException {
+        String content = null;
+        boolean isFirst = true;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (isFirst && parser.currentToken() == JsonToken.START_OBJECT) {
+                content = readMessageContent(parser, messageField);
+            } else {
+                parser.skipChildren();
+            }
+            isFirst = false;
+        }
+        return content;
+    }
+
+    private static String readMessageContent(JsonParser parser, String messageField) throws IOException {
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals(messageField) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String messageProperty = parser.currentName();
+                    parser.nextToken();
+                    // A null content, e.g. in the first chunk of a stream, is no content
+                    if (messageProperty.equals("content") && parser.currentToken() != JsonToken.VALUE_NULL) {
+                        content = readText(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+
+    private static Usage readUsage(JsonParser parser) throws IOException {
+        int promptTokens = 0;
+        int completionTokens = 0;
+        int totalTokens = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NUMBER_INT) {
+                switch (field) {
+                    case "prompt_tokens" -> promptTokens = parser.getIntValue();
+                    case "completion_tokens" -> completionTokens = parser.getIntValue();
+                    case "total_tokens" -> totalTokens = parser.getIntValue();
+                    default -> {}
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Usage(promptTokens, completionTokens, totalTokens);
+    }
+
+    // Scalar text as JsonNode.asText() would give it, containers are skipped
+    private static String readText(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getText();
+    }
+}
@@ -2,6 +2,10 @@ package org.llmtoolkit.basicllm;
 
 import dev.langchain4j.model.chat.ChatModel;
 
+/**
+ * Providers are part of the {@link BasicLLM} configuration that {@link ChatModelRegistry} shares models by,
+ * so providers configured by values should be equal when their values are
+ */
 public interface ChatModelProvider {
     ChatModel createChatModel(BasicLLM llm);
 }
@@ -0,0 +1,89 @@
+package org.llmtoolkit.basicllm;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import dev.langchain4j.model.chat.ChatModel;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shares one ChatModel per BasicLLM configuration.
+ * Every langchain4j model owns an HTTP client with its own connection pool, so creating a model per request
+ * leaves idle pools behind and pays a new TLS handshake on every call. Models are thread-safe and can be shared.
+ * -
+ * Configurations are compared by value, including their provider, so providers should implement equals.
+ * The registry is bounded, least recently used models are evicted first. Evicted models are not closed,
+ * since {@link #get} hands the same instance to every caller and some may still use it.
+ * Only {@link #evict} and {@link #close} close models.
+ */
+@Slf4j
+public class ChatModelRegistry implements AutoCloseable {
+    private static final long DEFAULT_MAXIMUM_SIZE = 100;
+    private static final ChatModelRegistry SHARED = new ChatModelRegistry();
+
+    private final Cache<BasicLLM, ChatModel> models;
+
+    public ChatModelRegistry() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize maximum number of models kept
+     */
+    public ChatModelRegistry(long maximumSize) {
+        this.models = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .removalListener((RemovalNotification<BasicLLM, ChatModel> removal) -> {
+                    if (!removal.wasEvicted()) {
+                        closeQuietly(removal.getValue());
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * The registry used by {@link BasicLLM#get()}
+     */
+    public static ChatModelRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the model for the configuration, creating it on first use
+     */
+    public ChatModel get(BasicLLM llm) {
+        return models.asMap().computeIfAbsent(llm, BasicLLM::create);
+    }
+
+    /**
+     * Removes the model for the configuration, so that the next {@link #get} creates a new one.
+     * Callers still holding the evicted model may keep using it, unless it had to be closed.
+     */
+    public void evict(BasicLLM llm) {
+        models.invalidate(llm);
+    }
+
+    public void evictAll() {
+        models.invalidateAll();
+    }
+
+    public int size() {
+        return (int) models.size();
+    }
+
+    @Override
+    public void close() {
+        evictAll();
+    }
+
+    // Current langchain4j models hold no closeable resources, but custom providers may return ones that do
+    private static void closeQuietly(ChatModel model) {
+        if (model instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Cannot close chat model {}", model, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.llmtoolkit.basicllm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Writes chat completion request bodies straight to bytes.
+ * Everything except the prompt is encoded once per parameter combination, so a request costs
+ * one escaped string write into a reused buffer and one copy of the result.
+ */
+class ChatRequestEncoder {
+    private static final byte[] MESSAGES_PREFIX =
+            ",\"messages\":[{\"role\":\"user\",\"content\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGES_SUFFIX = "}]}".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_CACHED_PREFIXES = 256;
+
+    private static final ThreadLocal<ByteArrayBuilder> BUFFERS = ThreadLocal.withInitial(ByteArrayBuilder::new);
+
+    private final JsonFactory jsonFactory;
+    private final Cache<RequestParameters, byte[]> prefixes =
+            CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PREFIXES).build();
+
+    /**
+     * Everything in the request body except the prompt
+     */
+    record RequestParameters(
+            String model,
+            Double temperature,
+            Double topP,
+            Integer maxTokens,
+            Integer thinkingTokens,
+            Integer timeout,
+            boolean stream) {}
+
+    ChatRequestEncoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    byte[] encode(RequestParameters parameters, String prompt) {
+        ByteArrayBuilder buffer = BUFFERS.get();
+        buffer.reset();
+        try {
+            buffer.write(prefix(parameters));
+            // A root level string: the generator writes no separators around it
+            try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+                generator.writeString(prompt);
+            }
+            buffer.write(MESSAGES_SUFFIX);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Error serializing request body: " + e.getMessage(), e);
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    private byte[] prefix(RequestParameters parameters) {
+        try {
+            return prefixes.get(parameters, () -> encodePrefix(parameters));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(
+                    "Error serializing request body: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // {"model":...,"stream":false,"messages":[{"role":"user","content":
+    private byte[] encodePrefix(RequestParameters parameters) throws IOException {
+        ByteArrayBuilder prefix = new ByteArrayBuilder();
+        try (JsonGenerator generator = jsonFactory.createGenerator(prefix)) {
+            // Left open, the rest is appended as raw bytes
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.writeStartObject();
+            generator.writeStringField("model", parameters.model());
+            if (parameters.timeout() != null) generator.writeNumberField("timeout", parameters.timeout());
+            if (parameters.temperature() != null) generator.writeNumberField("temperature", parameters.temperature());
+            if (parameters.topP() != null) generator.writeNumberField("top_p", parameters.topP());
+            if (parameters.thinkingTokens() != null)
+                generator.writeNumberField("max_completion_tokens", parameters.thinkingTokens());
+            if (parameters.maxTokens() != null) generator.writeNumberField("max_tokens", parameters.maxTokens());
+            generator.writeBooleanField("stream", parameters.stream());
+        }
+        prefix.write(MESSAGES_PREFIX);
+        return prefix.toByteArray();
+    }
+}
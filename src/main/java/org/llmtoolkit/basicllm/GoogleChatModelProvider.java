@@ -3,7 +3,9 @@ package org.llmtoolkit.basicllm;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import java.time.Duration;
+import lombok.EqualsAndHashCode;
 
+@EqualsAndHashCode
 public class GoogleChatModelProvider implements ChatModelProvider {
     private final String apiKey;
 
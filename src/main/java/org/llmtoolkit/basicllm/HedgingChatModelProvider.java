@@ -0,0 +1,222 @@
+package org.llmtoolkit.basicllm;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Singular;
+
+/**
+ * Composite provider that cuts tail latency and survives provider outages by spreading a request
+ * over several {@link BasicLLM} configurations, e.g. the same prompt on OpenAI, Anthropic and Google:
+ * <pre>
+ * HedgingChatModelProvider hedging = HedgingChatModelProvider.builder()
+ *         .llm(BasicLLM.builder().model(CommonLLMs.GPT_4_1).provider(CommonProviders.OPENAI.get()).build())
+ *         .llm(BasicLLM.builder().model(CommonLLMs.CLAUDE_3_7_SONNET).provider(CommonProviders.ANTHROPIC.get()).build())
+ *         .build();
+ * ChatModel model = BasicLLM.builder().model("hedged").provider(hedging).build().get();
+ * </pre>
+ * The first configuration is asked first. If it has not answered within the hedge delay, the next one is asked
+ * as well, and the first valid answer wins while the others are cancelled. A configuration that fails, times out
+ * or gives an invalid answer is replaced by the next one right away.
+ * -
+ * The hedge delay is a percentile of recent latencies of the first configuration, so only its slowest requests
+ * are hedged. The {@link BasicLLM} given to {@link #createChatModel} only names the composite model,
+ * its fields are not used: the composite reports the provider and request parameters of the first configuration.
+ */
+public class HedgingChatModelProvider implements ChatModelProvider {
+    private static final int LATENCY_WINDOW = 100;
+    private static final int MIN_LATENCY_SAMPLES = 10;
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("hedged-chat-%d")
+            .build());
+
+    private final List<BasicLLM> llms;
+    private final double hedgePercentile;
+    private final Duration initialHedgeDelay;
+    private final Duration minHedgeDelay;
+    private final Duration attemptTimeout;
+    private final Predicate<ChatResponse> answerValidator;
+
+    /**
+     * @param llms              configurations in order of preference
+     * @param hedgePercentile   latency percentile after which the next configuration is asked, 0.95 by default
+     * @param initialHedgeDelay hedge delay until enough latencies are known, 10 seconds by default
+     * @param minHedgeDelay     lower bound of the hedge delay, 1 second by default
+     * @param attemptTimeout    time after which an attempt counts as failed, no limit if null
+     * @param answerValidator   answers failing it count as failed attempts, by default any AI message is valid
+     */
+    @Builder
+    private HedgingChatModelProvider(
+            @Singular @NonNull List<BasicLLM> llms,
+            Double hedgePercentile,
+            Duration initialHedgeDelay,
+            Duration minHedgeDelay,
+            Duration attemptTimeout,
+            Predicate<ChatResponse> answerValidator) {
+        if (llms.isEmpty()) {
+            throw new IllegalArgumentException("At least one LLM is required");
+        }
+        if (hedgePercentile != null && (hedgePercentile <= 0 || hedgePercentile > 1)) {
+            throw new IllegalArgumentException("Hedge percentile must be in (0, 1]: " + hedgePercentile);
+        }
+        this.llms = List.copyOf(llms);
+        this.hedgePercentile = hedgePercentile == null ? 0.95 : hedgePercentile;
+        this.initialHedgeDelay = initialHedgeDelay == null ? Duration.ofSeconds(10) : initialHedgeDelay;
+        this.minHedgeDelay = minHedgeDelay == null ? Duration.ofSeconds(1) : minHedgeDelay;
+        this.attemptTimeout = attemptTimeout;
+        this.answerValidator = answerValidator == null ? response -> response.aiMessage() != null : answerValidator;
+    }
+
+    @Override
+    public ChatModel createChatModel(BasicLLM llm) {
+        return new HedgedChatModel();
+    }
+
+    private record Outcome(int index, ChatResponse response, Throwable error) {}
+
+    private record Attempt(int index, long startedAt, Future<?> future) {}
+
+    class HedgedChatModel implements ChatModel {
+        private final Deque<Long> latencies = new ArrayDeque<>();
+
+        @Override
+        public ChatResponse chat(ChatRequest request) {
+            BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+            List<Attempt> running = new ArrayList<>();
+            RuntimeException failure = new RuntimeException("None of the " + llms.size() + " LLMs answered");
+            long start = System.nanoTime();
+            long hedgeDelay = hedgeDelayNanos();
+            long hedgeAt = start + hedgeDelay;
+            int next = 0;
+            running.add(launch(next++, request, outcomes));
+            try {
+                while (!running.isEmpty()) {
+                    Outcome outcome = awaitOutcome(outcomes, running, next < llms.size() ? hedgeAt : Long.MAX_VALUE);
+                    long now = System.nanoTime();
+                    if (outcome != null && running.removeIf(attempt -> attempt.index() == outcome.index())) {
+                        if (outcome.error() == null && answerValidator.test(outcome.response())) {
+                            // Only latencies of the first LLM, which is asked first, set its hedge delay.
+                            // A lower bound of it when a hedge won, dropping those would skew the delay downward
+                            if (outcome.index() == 0 || running.stream().anyMatch(attempt -> attempt.index() == 0)) {
+                                recordLatency(now - start);
+                            }
+                            return outcome.response();
+                        }
+                        failure.addSuppressed(
+                                outcome.error() != null
+                                        ? outcome.error()
+                                        : new RuntimeException("Invalid answer from " + describe(outcome.index()) + ": "
+                                                + outcome.response()));
+                        if (next < llms.size()) {
+                            running.add(launch(next++, request, outcomes));
+                            hedgeAt = now + hedgeDelay;
+                        }
+                        continue;
+                    }
+                    for (Iterator<Attempt> attempts = running.iterator(); attempts.hasNext(); ) {
+                        Attempt attempt = attempts.next();
+                        if (attemptTimeout != null && now - attempt.startedAt() >= attemptTimeout.toNanos()) {
+                            attempt.future().cancel(true);
+                            attempts.remove();
+                            failure.addSuppressed(new TimeoutException(
+                                    describe(attempt.index()) + " did not answer within " + attemptTimeout));
+                        }
+                    }
+                    if (next < llms.size() && (now >= hedgeAt || running.isEmpty())) {
+                        running.add(launch(next++, request, outcomes));
+                        hedgeAt = now + hedgeDelay;
+                    }
+                }
+                throw failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for an answer", e);
+            } finally {
+                running.forEach(attempt -> attempt.future().cancel(true));
+            }
+        }
+
+        private Attempt launch(int index, ChatRequest request, BlockingQueue<Outcome> outcomes) {
+            BasicLLM llm = llms.get(index);
+            Future<?> future = executor.submit(() -> {
+                try {
+                    outcomes.add(new Outcome(index, llm.get().chat(request), null));
+                } catch (Throwable e) {
+                    outcomes.add(new Outcome(index, null, e));
+                }
+            });
+            return new Attempt(index, System.nanoTime(), future);
+        }
+
+        // Waits until the next outcome, the hedge time or the earliest attempt timeout, null if no outcome came
+        private Outcome awaitOutcome(BlockingQueue<Outcome> outcomes, List<Attempt> running, long hedgeAt)
+                throws InterruptedException {
+            long wakeAt = hedgeAt;
+            if (attemptTimeout != null) {
+                for (Attempt attempt : running) {
+                    wakeAt = Math.min(wakeAt, attempt.startedAt() + attemptTimeout.toNanos());
+                }
+            }
+            return wakeAt == Long.MAX_VALUE
+                    ? outcomes.take()
+                    : outcomes.poll(wakeAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public ChatRequestParameters defaultRequestParameters() {
+            return llms.get(0).get().defaultRequestParameters();
+        }
+
+        @Override
+        public ModelProvider provider() {
+            return llms.get(0).get().provider();
+        }
+
+        long hedgeDelayNanos() {
+            long[] sorted;
+            synchronized (latencies) {
+                if (latencies.size() < MIN_LATENCY_SAMPLES) {
+                    return initialHedgeDelay.toNanos();
+                }
+                sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            }
+            Arrays.sort(sorted);
+            long percentile = sorted[(int) Math.ceil(hedgePercentile * sorted.length) - 1];
+            return Math.max(minHedgeDelay.toNanos(), percentile);
+        }
+
+        private void recordLatency(long nanos) {
+            synchronized (latencies) {
+                if (latencies.size() == LATENCY_WINDOW) {
+                    latencies.removeFirst();
+                }
+                latencies.addLast(nanos);
+            }
+        }
+
+        private String describe(int index) {
+            return llms.get(index).getModel();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.llmtoolkit.basicllm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * OpenAI Batch API: the JSONL request file is uploaded, a batch is created for it,
+ * and the results are downloaded from the output and error files once the batch has ended.
+ */
+public class OpenAiBatchChatModel extends BatchChatModel {
+    private static final String DEFAULT_BASE_URL = "https://api.openai.com/v1";
+    private static final String ENDPOINT = "/v1/chat/completions";
+    private static final String COMPLETION_WINDOW = "24h";
+    private static final Set<String> ENDED_STATUSES = Set.of("completed", "expired", "cancelled");
+
+    private final String baseUrl;
+    private final String authorization;
+
+    /**
+     * @param pollInterval    delay before the second poll, doubled after every poll
+     * @param maxPollInterval upper bound of the delay between polls
+     * @param maxWait         how long to wait for a batch before giving up
+     */
+    @Builder
+    private OpenAiBatchChatModel(
+            String baseUrl,
+            @NonNull String apiKey,
+            @NonNull BasicLLM llm,
+            Duration pollInterval,
+            Duration maxPollInterval,
+            Duration maxWait) {
+        super(llm, pollInterval, maxPollInterval, maxWait);
+        this.baseUrl = (baseUrl == null ? DEFAULT_BASE_URL : baseUrl).replaceAll("/+$", "");
+        this.authorization = "Bearer " + apiKey;
+    }
+
+    @Override
+    public String submit(Map<String, String> promptsByCustomId) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("batch-", ".jsonl");
+            writeRequests(promptsByCustomId, file);
+            String fileId = upload(file);
+
+            ObjectNode batch = objectMapper.createObjectNode();
+            batch.put("input_file_id", fileId);
+            batch.put("endpoint", ENDPOINT);
+            batch.put("completion_window", COMPLETION_WINDOW);
+            return sendForJson(request("/batches")
+                            .header("Content-Type", "application/json")
+                            .POST(BodyPublishers.ofString(json(batch), StandardCharsets.UTF_8))
+                            .build())
+                    .path("id")
+                    .asText();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing batch request file: " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(file);
+        }
+    }
+
+    @Override
+    ObjectNode requestLine(String customId, String prompt) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", llm.getModel());
+        body.putArray("messages").addObject().put("role", "user").put("content", prompt);
+        if (llm.getTemperature() != null) body.put("temperature", llm.getTemperature());
+        if (llm.getTopP() != null) body.put("top_p", llm.getTopP());
+        if (llm.getMaxTokens() != null) body.put("max_tokens", llm.getMaxTokens());
+        if (llm.getThinkingTokens() != null) body.put("max_completion_tokens", llm.getThinkingTokens());
+        if (llm.getReasoningEffort() != null) {
+            if (!llm.isThinking()) {
+                throw new RuntimeException("Reasoning effort is not supported for non-thinking mode");
+            }
+            body.put("reasoning_effort", llm.getReasoningEffort().getValue());
+        }
+
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("custom_id", customId);
+        line.put("method", "POST");
+        line.put("url", ENDPOINT);
+        line.set("body", body);
+        return line;
+    }
+
+    @Override
+    BatchState poll(String batchId) {
+        JsonNode batch = sendForJson(request("/batches/" + batchId).GET().build());
+        String status = batch.path("status").asText();
+        if (status.equals("failed")) {
+            throw new RuntimeException("Batch " + batchId + " failed: " + batch.path("errors"));
+        }
+        // Expired and cancelled batches still have the results of the requests that completed
+        List<String> resultFiles = new ArrayList<>();
+        for (String field : List.of("output_file_id", "error_file_id")) {
+            if (batch.hasNonNull(field)) resultFiles.add(batch.get(field).asText());
+        }
+        return new BatchState(status, ENDED_STATUSES.contains(status), resultFiles);
+    }
+
+    @Override
+    String download(String fileId) {
+        return send(request("/files/" + fileId + "/content").GET().build());
+    }
+
+    @Override
+    BatchResult parseResult(JsonNode line) {
+        String customId = line.path("custom_id").asText();
+        if (line.hasNonNull("error")) {
+            return new BatchResult(customId, null, line.get("error").toString());
+        }
+        JsonNode response = line.path("response");
+        if (response.path("status_code").asInt() >= 400) {
+            return new BatchResult(
+                    customId,
+                    null,
+                    "API error code: " + response.path("status_code") + "\nBody: " + response.path("body"));
+        }
+        JsonNode content =
+                response.path("body").path("choices").path(0).path("message").path("content");
+        if (content.isMissingNode() || content.isNull()) {
+            return new BatchResult(customId, null, "Unexpected response format: " + response.path("body"));
+        }
+        return new BatchResult(customId, content.asText(), null);
+    }
+
+    private String upload(Path file) throws FileNotFoundException {
+        String boundary = "batch-" + UUID.randomUUID();
+        String head = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"purpose\"\r\n\r\n"
+                + "batch\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + file.getFileName() + "\"\r\n"
+                + "Content-Type: application/jsonl\r\n\r\n";
+        String tail = "\r\n--" + boundary + "--\r\n";
+
+        // The request file is streamed from disk rather than loaded into memory
+        HttpRequest request = request("/files")
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(BodyPublishers.concat(
+                        BodyPublishers.ofString(head, StandardCharsets.UTF_8),
+                        BodyPublishers.ofFile(file),
+                        BodyPublishers.ofString(tail, StandardCharsets.UTF_8)))
+                .build();
+        return sendForJson(request).path("id").asText();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).header("Authorization", authorization);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // A leftover temp file is not worth failing the batch for
+        }
+    }
+}
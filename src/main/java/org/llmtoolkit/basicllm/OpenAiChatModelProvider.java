@@ -4,14 +4,27 @@ import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiChatRequestParameters;
 import java.time.Duration;
+import lombok.EqualsAndHashCode;
 
+@EqualsAndHashCode
 public class OpenAiChatModelProvider implements ChatModelProvider {
     private final String baseUrl;
     private final String apiKey;
+    private final boolean strictJsonSchema;
 
     public OpenAiChatModelProvider(String baseUrl, String apiKey) {
+        this(baseUrl, apiKey, false);
+    }
+
+    /**
+     * @param strictJsonSchema whether requests with a json schema response format, e.g. of
+     *                         {@link org.llmtoolkit.core.NativeJsonResponseStructuringStrategy}, ask for strict mode,
+     *                         i.e. constrained decoding. Not all OpenAI-compatible providers support it.
+     */
+    public OpenAiChatModelProvider(String baseUrl, String apiKey, boolean strictJsonSchema) {
         this.baseUrl = baseUrl;
         this.apiKey = apiKey;
+        this.strictJsonSchema = strictJsonSchema;
     }
 
     @Override
@@ -38,7 +51,19 @@ public class OpenAiChatModelProvider implements ChatModelProvider {
         if (llm.getThinkingTokens() != null) builder.maxCompletionTokens(llm.getThinkingTokens());
         if (llm.getTemperature() != null) builder.temperature(llm.getTemperature());
         if (llm.getTopP() != null) builder.topP(llm.getTopP());
+        if (strictJsonSchema) builder.strictJsonSchema(true);
 
         return builder.build();
     }
+
+    /**
+     * Batch counterpart of {@link #createChatModel}, for answering many prompts at a lower price
+     */
+    public OpenAiBatchChatModel createBatchChatModel(BasicLLM llm) {
+        return OpenAiBatchChatModel.builder()
+                .baseUrl(baseUrl)
+                .apiKey(apiKey)
+                .llm(llm)
+                .build();
+    }
 }
@@ -0,0 +1,203 @@
+package org.llmtoolkit.basicllm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.Builder;
+import org.llmtoolkit.util.PromptCaching;
+import org.llmtoolkit.util.TokenEstimate;
+
+/**
+ * Keeps requests within a provider's rate limits on the client side, so that fanning out queues callers
+ * instead of triggering a storm of 429 responses and retries.
+ * -
+ * Requests per minute and tokens per minute are token buckets, in-flight requests are bounded by a semaphore,
+ * and callers are served in arrival order. Prompt tokens are estimated before sending, and the estimate is
+ * corrected with the usage the provider reports.
+ * -
+ * Limits apply to everything governed by one instance: share an instance across the {@link BasicLLM}s
+ * of a provider account for account-wide limits, or use one per model for per-model limits.
+ */
+public class RateGovernor {
+    private final TokenBucket requests;
+    private final TokenBucket tokens;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    // Fair, so callers reserve rate limit permits in arrival order
+    private final ReentrantLock queue = new ReentrantLock(true);
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder governedRequests = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param requestsPerMinute request limit, unlimited if null
+     * @param tokensPerMinute   token limit of prompts and answers combined, unlimited if null
+     * @param maxInFlight       maximum number of concurrent requests, unlimited if null
+     */
+    @Builder
+    private RateGovernor(Integer requestsPerMinute, Integer tokensPerMinute, Integer maxInFlight) {
+        this.requests = requestsPerMinute == null ? null : new TokenBucket(requestsPerMinute, System::nanoTime);
+        this.tokens = tokensPerMinute == null ? null : new TokenBucket(tokensPerMinute, System::nanoTime);
+        this.maxInFlight = maxInFlight == null ? Integer.MAX_VALUE : maxInFlight;
+        this.inFlight = new Semaphore(this.maxInFlight, true);
+    }
+
+    /**
+     * @param queueDepth  callers currently waiting for a connection slot or rate limit permits
+     * @param inFlight    requests currently sent and not yet answered
+     * @param requests    requests governed so far
+     * @param totalWait   time callers spent waiting in total
+     * @param maxWait     longest time a caller has waited
+     */
+    public record Stats(int queueDepth, int inFlight, long requests, Duration totalWait, Duration maxWait) {
+        public Duration averageWait() {
+            return requests == 0 ? Duration.ZERO : totalWait.dividedBy(requests);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(
+                queueDepth.get(),
+                maxInFlight - inFlight.availablePermits(),
+                governedRequests.sum(),
+                Duration.ofNanos(totalWaitNanos.sum()),
+                Duration.ofNanos(maxWaitNanos.get()));
+    }
+
+    /**
+     * Wraps the model so that all its requests go through this governor
+     */
+    public ChatModel govern(ChatModel model) {
+        return new GovernedChatModel(model, this);
+    }
+
+    ChatResponse chat(ChatRequest request, ChatModel model) {
+        int estimatedTokens = estimateTokens(request.messages());
+        waitForTurn(estimatedTokens);
+        try {
+            ChatResponse response = model.chat(request);
+            correctTokenEstimate(estimatedTokens, response.tokenUsage());
+            return response;
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private void waitForTurn(int estimatedTokens) {
+        long start = System.nanoTime();
+        queueDepth.incrementAndGet();
+        try {
+            long waitNanos;
+            queue.lockInterruptibly();
+            try {
+                waitNanos = Math.max(
+                        requests == null ? 0 : requests.reserve(1),
+                        tokens == null ? 0 : tokens.reserve(estimatedTokens));
+            } finally {
+                queue.unlock();
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            // Only once the request can be sent, so that callers waiting for rate limits take no slot
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for rate limits", e);
+        } finally {
+            queueDepth.decrementAndGet();
+        }
+        long waited = System.nanoTime() - start;
+        governedRequests.increment();
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    private void correctTokenEstimate(int estimatedTokens, TokenUsage usage) {
+        if (tokens != null && usage != null && usage.totalTokenCount() != null) {
+            tokens.adjust(usage.totalTokenCount() - estimatedTokens);
+        }
+    }
+
+    static int estimateTokens(List<ChatMessage> messages) {
+        long chars = 0;
+        for (ChatMessage message : messages) {
+            if (message instanceof SystemMessage system) {
+                chars += system.text().length();
+            } else if (message instanceof UserMessage user) {
+                for (Content content : user.contents()) {
+                    if (content instanceof TextContent text) {
+                        chars += text.text().length();
+                    }
+                }
+            } else if (message instanceof AiMessage ai && ai.text() != null) {
+                chars += ai.text().length();
+            } else if (message instanceof ToolExecutionResultMessage result) {
+                chars += result.text().length();
+            }
+        }
+        // Every request takes a permit, even an empty one
+        return Math.max(1, TokenEstimate.ofLength(chars));
+    }
+
+    private static class GovernedChatModel implements ChatModel, PromptCaching.BreakpointAware {
+        private final ChatModel delegate;
+        private final RateGovernor governor;
+
+        GovernedChatModel(ChatModel delegate, RateGovernor governor) {
+            this.delegate = delegate;
+            this.governor = governor;
+        }
+
+        @Override
+        public ChatResponse chat(ChatRequest request) {
+            return governor.chat(request, delegate);
+        }
+
+        @Override
+        public ChatRequestParameters defaultRequestParameters() {
+            return delegate.defaultRequestParameters();
+        }
+
+        @Override
+        public List<ChatModelListener> listeners() {
+            return delegate.listeners();
+        }
+
+        @Override
+        public ModelProvider provider() {
+            return delegate.provider();
+        }
+
+        @Override
+        public Set<Capability> supportedCapabilities() {
+            return delegate.supportedCapabilities();
+        }
+
+        @Override
+        public boolean understandsBreakpoints() {
+            return PromptCaching.understandsBreakpoints(delegate);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.llmtoolkit.basicllm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket refilled continuously up to a minute's worth of permits.
+ * Permits are reserved up front: a caller asking for more than is available is told how long to wait,
+ * and later callers queue behind its debt, so a request larger than the bucket still goes through eventually.
+ */
+class TokenBucket {
+    private final double capacity;
+    private final double permitsPerNano;
+    private final LongSupplier nanoClock;
+
+    private double available;
+    private long refilledAt;
+
+    TokenBucket(long permitsPerMinute, LongSupplier nanoClock) {
+        if (permitsPerMinute <= 0) {
+            throw new IllegalArgumentException("Permits per minute must be positive: " + permitsPerMinute);
+        }
+        this.capacity = permitsPerMinute;
+        this.permitsPerNano = permitsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.nanoClock = nanoClock;
+        this.available = capacity;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * @return nanos to wait before the reserved permits may be used
+     */
+    synchronized long reserve(long permits) {
+        refill();
+        long waitNanos = available >= permits ? 0 : (long) Math.ceil((permits - available) / permitsPerNano);
+        available -= permits;
+        return waitNanos;
+    }
+
+    /**
+     * Takes more permits, or gives some back if negative, once the real cost of a request is known
+     */
+    synchronized void adjust(long permits) {
+        refill();
+        available = Math.min(capacity, available - permits);
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        available = Math.min(capacity, available + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+    }
+}
@@ -4,9 +4,31 @@ import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.service.AiServices;
 import java.lang.reflect.Method;
 import java.util.function.Consumer;
+import org.llmtoolkit.core.OutputInstructions.SchemaFormat;
 import org.llmtoolkit.util.json.JsonUtils;
 
 public class JacksonSourceResponseStructuringStrategy implements ResponseStructuringStrategy {
+    private final SchemaFormat schemaFormat;
+    private final Integer schemaTokenBudget;
+
+    public JacksonSourceResponseStructuringStrategy() {
+        this(SchemaFormat.JAVA_SOURCE, null);
+    }
+
+    public JacksonSourceResponseStructuringStrategy(Integer schemaTokenBudget) {
+        this(SchemaFormat.JAVA_SOURCE, schemaTokenBudget);
+    }
+
+    /**
+     * @param schemaFormat      how return types are described in the instructions
+     * @param schemaTokenBudget estimated tokens above which return types described as {@link SchemaFormat#JAVA_SOURCE}
+     *                          are described as {@link SchemaFormat#COMPACT_JAVA_SOURCE} instead,
+     *                          always described in the given format if null
+     */
+    public JacksonSourceResponseStructuringStrategy(SchemaFormat schemaFormat, Integer schemaTokenBudget) {
+        this.schemaFormat = schemaFormat == null ? SchemaFormat.JAVA_SOURCE : schemaFormat;
+        this.schemaTokenBudget = schemaTokenBudget;
+    }
 
     @Override
     public <T> Object createService(Class<T> serviceInterface, ChatModel model, Consumer<AiServices<?>> customizer) {
@@ -22,15 +44,14 @@ public class JacksonSourceResponseStructuringStrategy implements ResponseStructu
     }
 
     @Override
-    public String augmentPromptWithOutputInstructions(String prompt, Method method, ReturnTypeInfo typeInfo) {
+    public String outputInstructions(Method method, ReturnTypeInfo typeInfo) {
         if (typeInfo.isString()) {
-            return prompt;
+            return "";
         }
 
-        return prompt + "\n"
-                + (typeInfo.isList()
-                        ? OutputInstructions.arrayInstructions(typeInfo.getValueType())
-                        : OutputInstructions.singleObjectInstructions(typeInfo.getValueType()));
+        OutputInstructions.Instructions instructions =
+                OutputInstructions.instructions(typeInfo.getValueType(), schemaFormat, schemaTokenBudget);
+        return "\n" + (typeInfo.isList() ? instructions.array() : instructions.singleObject());
     }
 
     @Override
@@ -0,0 +1,451 @@
+package org.llmtoolkit.core;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.langchain4j.model.chat.request.json.JsonArraySchema;
+import dev.langchain4j.model.chat.request.json.JsonBooleanSchema;
+import dev.langchain4j.model.chat.request.json.JsonEnumSchema;
+import dev.langchain4j.model.chat.request.json.JsonIntegerSchema;
+import dev.langchain4j.model.chat.request.json.JsonNumberSchema;
+import dev.langchain4j.model.chat.request.json.JsonObjectSchema;
+import dev.langchain4j.model.chat.request.json.JsonReferenceSchema;
+import dev.langchain4j.model.chat.request.json.JsonSchemaElement;
+import dev.langchain4j.model.chat.request.json.JsonStringSchema;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import org.llmtoolkit.core.annotations.Cue;
+import org.llmtoolkit.util.ClassToString;
+
+/**
+ * Describes the records and enums reachable from a class as a JSON Schema document, the alternative to
+ * the Java source description of {@link org.llmtoolkit.util.ClassToString}.
+ * -
+ * Records become objects with all components required and no additional properties, enums become string enums,
+ * and {@link Cue} texts become descriptions. Every record and enum other than the root is defined once
+ * in {@code $defs} and referenced, which also covers recursive types.
+ * The same schema can be given to providers' native structured output modes, see {@link #toJsonSchemaElement}.
+ * Schemas are generated once per class.
+ */
+public class JsonSchemaGenerator {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String DEFINITIONS = "$defs";
+    private static final String REFERENCE = "$ref";
+
+    private static final ClassValue<Schema> SCHEMAS = new ClassValue<>() {
+        @Override
+        protected Schema computeValue(Class<?> clazz) {
+            ObjectNode node = new Generation(clazz).schema();
+            try {
+                return new Schema(node, objectMapper.writeValueAsString(node));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Error serializing JSON schema of " + clazz.getName(), e);
+            }
+        }
+    };
+
+    private record Schema(ObjectNode node, String json) {}
+
+    /**
+     * @return a copy of the cached schema, free to modify
+     */
+    public static ObjectNode schemaFor(Class<?> clazz) {
+        return SCHEMAS.get(clazz).node().deepCopy();
+    }
+
+    /**
+     * @return the cached schema serialized on one line
+     */
+    public static String schemaJsonFor(Class<?> clazz) {
+        return SCHEMAS.get(clazz).json();
+    }
+
+    /**
+     * Converts a schema generated here, possibly nested in another object schema that keeps its {@code $defs}
+     * at the top, to Langchain4j's model for native structured output.
+     * -
+     * References are inlined, as not every provider resolves them, except where a type contains itself.
+     * Those types are defined on the root object instead. Formats are moved into descriptions.
+     * -
+     * Open objects, i.e. maps, untyped values and classes other than records, are rejected: the model has
+     * no place for their value schemas, and strict providers would only allow them to be empty.
+     *
+     * @throws IllegalArgumentException if the schema contains an open object
+     */
+    public static JsonSchemaElement toJsonSchemaElement(ObjectNode schema) {
+        return new ElementConversion(schema.path(DEFINITIONS)).document(schema);
+    }
+
+    private static class ElementConversion {
+        private static final String DEFINITION_PREFIX = "#/" + DEFINITIONS + "/";
+
+        private final JsonNode definitions;
+        private final Set<String> expanding = new HashSet<>();
+        private final Set<String> recursive = new HashSet<>();
+        private final Map<String, JsonSchemaElement> recursiveDefinitions = new LinkedHashMap<>();
+
+        ElementConversion(JsonNode definitions) {
+            this.definitions = definitions;
+        }
+
+        JsonSchemaElement document(JsonNode schema) {
+            JsonSchemaElement root = element(schema, null, "$");
+            if (recursiveDefinitions.isEmpty()) {
+                return root;
+            }
+            if (!(root instanceof JsonObjectSchema object)) {
+                throw new IllegalArgumentException("Schema with recursive types must be an object: " + schema);
+            }
+            return JsonObjectSchema.builder()
+                    .description(object.description())
+                    .addProperties(object.properties())
+                    .required(object.required())
+                    .additionalProperties(object.additionalProperties())
+                    .definitions(recursiveDefinitions)
+                    .build();
+        }
+
+        /**
+         * @param outerDescription description of the property the schema is inlined into, if any
+         * @param path             where the schema is in the document, for errors
+         */
+        private JsonSchemaElement element(JsonNode schema, String outerDescription, String path) {
+            String description = joinDescriptions(text(schema, "description"), outerDescription);
+            if (schema.has(REFERENCE)) {
+                return inline(schema.get(REFERENCE).asText(), description, path);
+            }
+            String type = text(schema, "type");
+            if (type == null) {
+                throw openObject(path, "an untyped value");
+            }
+            return switch (type) {
+                case "object" -> {
+                    JsonNode additionalProperties = schema.path("additionalProperties");
+                    if (!additionalProperties.isBoolean() || additionalProperties.asBoolean()) {
+                        throw openObject(path, "an object with arbitrary properties, e.g. a map");
+                    }
+                    JsonObjectSchema.Builder object = JsonObjectSchema.builder().description(description);
+                    for (Map.Entry<String, JsonNode> property :
+                            schema.path("properties").properties()) {
+                        object.addProperty(
+                                property.getKey(), element(property.getValue(), null, path + "." + property.getKey()));
+                    }
+                    if (schema.has("required")) {
+                        List<String> required = new ArrayList<>();
+                        schema.get("required").forEach(name -> required.add(name.asText()));
+                        object.required(required);
+                    }
+                    object.additionalProperties(false);
+                    yield object.build();
+                }
+                case "array" ->
+                    JsonArraySchema.builder()
+                            .description(description)
+                            .items(element(
+                                    schema.has("items") ? schema.get("items") : objectMapper.createObjectNode(),
+                                    null,
+                                    path + "[]"))
+                            .build();
+                case "string" -> {
+                    if (schema.has("enum")) {
+                        List<String> values = new ArrayList<>();
+                        schema.get("enum").forEach(value -> values.add(value.asText()));
+                        yield JsonEnumSchema.builder()
+                                .description(description)
+                                .enumValues(values)
+                                .build();
+                    }
+                    String format = text(schema, "format");
+                    yield JsonStringSchema.builder()
+                            .description(joinDescriptions(description, format == null ? null : "Format: " + format))
+                            .build();
+                }
+                case "integer" ->
+                    JsonIntegerSchema.builder().description(description).build();
+                case "number" ->
+                    JsonNumberSchema.builder().description(description).build();
+                case "boolean" ->
+                    JsonBooleanSchema.builder().description(description).build();
+                default -> throw new IllegalArgumentException("Unsupported schema type: " + type);
+            };
+        }
+
+        private JsonSchemaElement inline(String reference, String description, String path) {
+            if (!reference.startsWith(DEFINITION_PREFIX)) {
+                throw new IllegalArgumentException("Unsupported reference: " + reference);
+            }
+            String name = reference.substring(DEFINITION_PREFIX.length());
+            JsonNode definition = definitions.get(name);
+            if (definition == null) {
+                throw new IllegalArgumentException("Missing definition: " + reference);
+            }
+            if (!expanding.add(name)) {
+                recursive.add(name);
+                return JsonReferenceSchema.builder().reference(name).build();
+            }
+            JsonSchemaElement element = element(definition, description, path);
+            if (recursive.contains(name) && !recursiveDefinitions.containsKey(name)) {
+                // Defined without the description of the property it was first inlined into
+                recursiveDefinitions.put(name, description == null ? element : element(definition, null, path));
+            }
+            expanding.remove(name);
+            return element;
+        }
+
+        private static IllegalArgumentException openObject(String path, String kind) {
+            return new IllegalArgumentException("Cannot constrain " + path + " to a schema, it is " + kind
+                    + ". Use records for structured output, or describe the schema in the prompt instead.");
+        }
+
+        private static String text(JsonNode schema, String field) {
+            JsonNode value = schema.get(field);
+            return value == null || value.isNull() ? null : value.asText();
+        }
+
+        private static String joinDescriptions(String first, String second) {
+            if (first == null) {
+                return second;
+            }
+            return second == null ? first : first + "\n" + second;
+        }
+    }
+
+    private static class Generation {
+        private final Class<?> root;
+        private final Map<Class<?>, String> definitionNames = new HashMap<>();
+        private final Set<String> usedNames = new HashSet<>();
+        private final ObjectNode definitions = objectMapper.createObjectNode();
+
+        Generation(Class<?> root) {
+            this.root = root;
+        }
+
+        ObjectNode schema() {
+            ObjectNode schema = root.isRecord() || root.isEnum() ? definition(root) : typeSchema(root);
+            if (!definitions.isEmpty()) {
+                schema.set(DEFINITIONS, definitions);
+            }
+            return schema;
+        }
+
+        private ObjectNode definition(Class<?> clazz) {
+            return clazz.isRecord() ? recordSchema(clazz) : enumSchema(clazz);
+        }
+
+        private ObjectNode recordSchema(Class<?> clazz) {
+            ObjectNode schema = objectMapper.createObjectNode();
+            schema.put("type", "object");
+            Cue cue = clazz.getAnnotation(Cue.class);
+            if (cue != null) {
+                schema.put("description", cue.value());
+            }
+            ObjectNode properties = schema.putObject("properties");
+            ArrayNode required = schema.putArray("required");
+            for (RecordComponent component : clazz.getRecordComponents()) {
+                String name = propertyName(component);
+                ObjectNode property = typeSchema(component.getGenericType());
+                Cue componentCue = componentCue(component);
+                if (componentCue != null) {
+                    property.put("description", componentCue.value());
+                }
+                properties.set(name, property);
+                required.add(name);
+            }
+            schema.put("additionalProperties", false);
+            return schema;
+        }
+
+        private ObjectNode enumSchema(Class<?> clazz) {
+            ObjectNode schema = objectMapper.createObjectNode();
+            schema.put("type", "string");
+            ArrayNode values = schema.putArray("enum");
+            List<String> descriptions = new ArrayList<>();
+            Cue cue = clazz.getAnnotation(Cue.class);
+            if (cue != null) {
+                descriptions.add(cue.value());
+            }
+            for (Field field : clazz.getDeclaredFields()) {
+                if (field.isEnumConstant()) {
+                    JsonProperty property = field.getAnnotation(JsonProperty.class);
+                    String value = property != null && !property.value().isEmpty() ? property.value() : field.getName();
+                    values.add(value);
+                    Cue constantCue = field.getAnnotation(Cue.class);
+                    if (constantCue != null) {
+                        descriptions.add(value + ": " + constantCue.value());
+                    }
+                }
+            }
+            if (!descriptions.isEmpty()) {
+                schema.put("description", String.join("\n", descriptions));
+            }
+            return schema;
+        }
+
+        private ObjectNode typeSchema(Type type) {
+            if (type instanceof Class<?> clazz) {
+                return classSchema(clazz);
+            } else if (type instanceof ParameterizedType paramType && paramType.getRawType() instanceof Class<?> raw) {
+                Type[] arguments = paramType.getActualTypeArguments();
+                if (Collection.class.isAssignableFrom(raw)) {
+                    return arraySchema(typeSchema(arguments[0]));
+                } else if (Map.class.isAssignableFrom(raw)) {
+                    ObjectNode schema = typeNamed("object");
+                    schema.set("additionalProperties", typeSchema(arguments[1]));
+                    return schema;
+                } else if (raw == Optional.class) {
+                    return typeSchema(arguments[0]);
+                }
+                return classSchema(raw);
+            } else if (type instanceof GenericArrayType arrayType) {
+                return arraySchema(typeSchema(arrayType.getGenericComponentType()));
+            } else if (type instanceof WildcardType wildcardType) {
+                return typeSchema(wildcardType.getUpperBounds()[0]);
+            } else if (type instanceof TypeVariable<?> typeVariable) {
+                return typeSchema(typeVariable.getBounds()[0]);
+            }
+            return objectMapper.createObjectNode();
+        }
+
+        private ObjectNode classSchema(Class<?> clazz) {
+            if (clazz.isRecord() || clazz.isEnum()) {
+                return reference(clazz);
+            } else if (clazz == boolean.class || clazz == Boolean.class) {
+                return typeNamed("boolean");
+            } else if (clazz == int.class
+                    || clazz == long.class
+                    || clazz == short.class
+                    || clazz == byte.class
+                    || clazz == Integer.class
+                    || clazz == Long.class
+                    || clazz == Short.class
+                    || clazz == Byte.class
+                    || clazz == BigInteger.class) {
+                return typeNamed("integer");
+            } else if (clazz == double.class
+                    || clazz == float.class
+                    || clazz == BigDecimal.class
+                    || Number.class.isAssignableFrom(clazz)) {
+                return typeNamed("number");
+            } else if (clazz == byte[].class) {
+                // Jackson writes byte arrays as base64 strings
+                return typeNamed("string");
+            } else if (clazz.isArray()) {
+                return arraySchema(typeSchema(clazz.getComponentType()));
+            } else if (Collection.class.isAssignableFrom(clazz)) {
+                return typeNamed("array");
+            } else if (Map.class.isAssignableFrom(clazz)) {
+                return typeNamed("object");
+            } else if (clazz == char.class
+                    || clazz == Character.class
+                    || CharSequence.class.isAssignableFrom(clazz)
+                    || clazz == UUID.class
+                    || clazz == URI.class
+                    || clazz == URL.class) {
+                return typeNamed("string");
+            } else if (Temporal.class.isAssignableFrom(clazz)) {
+                ObjectNode schema = typeNamed("string");
+                String format = dateFormat(clazz);
+                if (format != null) {
+                    schema.put("format", format);
+                }
+                return schema;
+            } else if (clazz == Object.class) {
+                return objectMapper.createObjectNode();
+            }
+            return typeNamed("object");
+        }
+
+        private ObjectNode reference(Class<?> clazz) {
+            // The root is referenced through its definition too, so that the schema can be nested in another one
+            ObjectNode reference = objectMapper.createObjectNode();
+            String name = definitionNames.get(clazz);
+            if (name == null) {
+                name = definitionName(clazz);
+                definitionNames.put(clazz, name);
+                // Reserved before generating, so that definitions keep the order of discovery and recursion stops
+                ObjectNode definition = definitions.putObject(name);
+                definition.setAll(definition(clazz));
+            }
+            return reference.put(REFERENCE, "#/" + DEFINITIONS + "/" + name);
+        }
+
+        private String definitionName(Class<?> clazz) {
+            String name = clazz.getSimpleName();
+            if (!usedNames.add(name)) {
+                // Same simple name in different scopes
+                name = clazz.getName().replace('$', '.');
+                usedNames.add(name);
+            }
+            return name;
+        }
+    }
+
+    private static String propertyName(RecordComponent component) {
+        JsonProperty property = component.getAnnotation(JsonProperty.class);
+        return property != null && !property.value().isEmpty() ? property.value() : component.getName();
+    }
+
+    // From the same places as ClassToString, so that all strategies describe a component alike
+    private static Cue componentCue(RecordComponent component) {
+        for (Annotation annotation : ClassToString.collectRecordComponentAnnotations(component)) {
+            if (annotation instanceof Cue cue) {
+                return cue;
+            }
+        }
+        return null;
+    }
+
+    private static String dateFormat(Class<?> clazz) {
+        if (clazz == LocalDate.class) {
+            return "date";
+        } else if (clazz == LocalTime.class) {
+            return "time";
+        } else if (clazz == LocalDateTime.class
+                || clazz == OffsetDateTime.class
+                || clazz == ZonedDateTime.class
+                || clazz == Instant.class) {
+            return "date-time";
+        }
+        return null;
+    }
+
+    private static ObjectNode typeNamed(String type) {
+        return objectMapper.createObjectNode().put("type", type);
+    }
+
+    private static ObjectNode arraySchema(ObjectNode items) {
+        ObjectNode schema = typeNamed("array");
+        schema.set("items", items);
+        return schema;
+    }
+}
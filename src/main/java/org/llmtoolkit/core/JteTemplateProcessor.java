@@ -6,6 +6,7 @@ import gg.jte.output.StringOutput;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.llmtoolkit.core.annotations.PP;
 import org.llmtoolkit.core.annotations.PT;
@@ -68,23 +69,41 @@ public class JteTemplateProcessor implements TemplateProcessor {
 
     @Override
     public String preparePrompt(Method method, Object[] args) {
+        return render(getTemplatePath(method), extractParameterNames(method), args);
+    }
+
+    @Override
+    public Function<Object[], String> prepareRenderer(Method method) {
         String templatePath = getTemplatePath(method);
-        Map<String, Object> params = extractParameters(method, args);
+        String[] parameterNames = extractParameterNames(method);
+        return args -> render(templatePath, parameterNames, args);
+    }
+
+    private String render(String templatePath, String[] parameterNames, Object[] args) {
+        Map<String, Object> params = new HashMap<>(parameterNames.length * 2);
+        for (int i = 0; i < parameterNames.length; i++) {
+            if (parameterNames[i] != null) {
+                params.put(parameterNames[i], args[i]);
+            }
+        }
 
         StringOutput output = new StringOutput();
         templateEngine.render(templatePath, params, output);
         return output.toString();
     }
 
-    private Map<String, Object> extractParameters(Method method, Object[] args) {
-        Map<String, Object> params = new HashMap<>();
+    /**
+     * Template parameter names by method parameter position, null for parameters without @PP
+     */
+    private static String[] extractParameterNames(Method method) {
         Parameter[] parameters = method.getParameters();
+        String[] names = new String[parameters.length];
         for (int i = 0; i < parameters.length; i++) {
             PP paramAnnotation = parameters[i].getAnnotation(PP.class);
             if (paramAnnotation != null) {
-                params.put(paramAnnotation.value(), args[i]);
+                names[i] = paramAnnotation.value();
             }
         }
-        return params;
+        return names;
     }
 }
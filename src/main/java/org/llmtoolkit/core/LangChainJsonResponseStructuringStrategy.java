@@ -5,8 +5,10 @@ import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.UserMessage;
 import dev.langchain4j.service.V;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.description.annotation.AnnotationDescription;
 import net.bytebuddy.description.modifier.Visibility;
@@ -49,7 +51,11 @@ public class LangChainJsonResponseStructuringStrategy implements ResponseStructu
                         .define("value", "raw")
                         .build();
 
-                builder = builder.defineMethod(method.getName(), method.getGenericReturnType(), Visibility.PUBLIC)
+                // Asynchronous methods are run by the factory, the generated method itself is blocking
+                Type resultType =
+                        ReturnTypeInfo.from(method.getGenericReturnType()).getResultType();
+
+                builder = builder.defineMethod(method.getName(), resultType, Visibility.PUBLIC)
                         .withParameter(String.class, "prompt")
                         .intercept(StubMethod.INSTANCE)
                         .annotateMethod(userMessageAnnotation)
@@ -64,23 +70,43 @@ public class LangChainJsonResponseStructuringStrategy implements ResponseStructu
     }
 
     @Override
-    public String augmentPromptWithOutputInstructions(String prompt, Method method, ReturnTypeInfo typeInfo) {
+    public String outputInstructions(Method method, ReturnTypeInfo typeInfo) {
         // Native type strategy doesn't modify the prompt as it relies on langchain4j's built-in type handling
-        return prompt;
+        return "";
     }
 
     @Override
     public Object invokeService(Object service, String prompt, Method originalMethod) {
+        return invoke(findServiceMethod(service, originalMethod), service, prompt);
+    }
+
+    @Override
+    public Function<String, Object> prepareServiceCall(Object service, Method originalMethod) {
+        Method serviceMethod = findServiceMethod(service, originalMethod);
+        return prompt -> invoke(serviceMethod, service, prompt);
+    }
+
+    private static Method findServiceMethod(Object service, Method originalMethod) {
+        try {
+            return service.getClass().getInterfaces()[0].getMethod(originalMethod.getName(), String.class);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Object invoke(Method serviceMethod, Object service, String prompt) {
         try {
-            return service.getClass()
-                    .getInterfaces()[0]
-                    .getMethod(originalMethod.getName(), String.class)
-                    .invoke(service, prompt);
+            return serviceMethod.invoke(service, prompt);
         } catch (ReflectiveOperationException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public Type rawResultType(ReturnTypeInfo typeInfo) {
+        return typeInfo.getResultType();
+    }
+
     @Override
     public Object convertResult(Object result, ReturnTypeInfo typeInfo) {
         // Native type strategy doesn't need to process the result as langchain4j handles the conversion
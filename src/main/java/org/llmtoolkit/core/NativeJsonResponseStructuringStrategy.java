@@ -0,0 +1,135 @@
+package org.llmtoolkit.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ResponseFormat;
+import dev.langchain4j.model.chat.request.ResponseFormatType;
+import dev.langchain4j.model.chat.request.json.JsonSchema;
+import dev.langchain4j.service.AiServices;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Asks for JSON through the provider's native structured output, e.g. OpenAI's json_schema response format or
+ * Gemini's response schema, with the schema generated from the return type by {@link JsonSchemaGenerator}.
+ * For OpenAI, create the provider with strict json schemas enabled to get constrained decoding.
+ * -
+ * The provider constrains the answer to the schema, so no output instructions are added to prompts,
+ * and answers are parsed by a strict Jackson reader, without the YAML and repair fallbacks of
+ * {@link org.llmtoolkit.util.json.JsonUtils}.
+ * Lists cannot be the root of a response format, so they are asked for wrapped as {@code {"items": [...]}}.
+ * Return types must be records or enums all the way down: maps and untyped values have no strict schema,
+ * and creating a service with such a method fails.
+ * The model is called directly, without AiServices, so AiServices customizers are not supported.
+ */
+public class NativeJsonResponseStructuringStrategy implements ResponseStructuringStrategy {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    static final String ITEMS_PROPERTY = "items";
+
+    @Override
+    public <T> Object createService(Class<T> serviceInterface, ChatModel model, Consumer<AiServices<?>> customizer) {
+        if (customizer != null) {
+            throw new UnsupportedOperationException(
+                    "AiServices customizers are not supported by " + getClass().getSimpleName());
+        }
+        return model;
+    }
+
+    @Override
+    public Object invokeService(Object service, String prompt, Method originalMethod) {
+        return prepareServiceCall(service, originalMethod).apply(prompt);
+    }
+
+    @Override
+    public Function<String, Object> prepareServiceCall(Object service, Method originalMethod) {
+        ChatModel model = (ChatModel) service;
+        ReturnTypeInfo typeInfo = ReturnTypeInfo.from(originalMethod.getGenericReturnType());
+        if (typeInfo.isString()) {
+            return model::chat;
+        }
+        ResponseFormat responseFormat = responseFormat(typeInfo);
+        return prompt -> model.chat(ChatRequest.builder()
+                        .messages(UserMessage.from(prompt))
+                        .responseFormat(responseFormat)
+                        .build())
+                .aiMessage()
+                .text();
+    }
+
+    /**
+     * Response format with the schema of the return type, built once per method
+     */
+    static ResponseFormat responseFormat(ReturnTypeInfo typeInfo) {
+        Class<?> valueType = typeInfo.getValueType();
+        ObjectNode schema = JsonSchemaGenerator.schemaFor(valueType);
+        String name = valueType.getSimpleName();
+        if (typeInfo.isList()) {
+            schema = wrapInItems(schema);
+            name += "List";
+        }
+        return ResponseFormat.builder()
+                .type(ResponseFormatType.JSON)
+                .jsonSchema(JsonSchema.builder()
+                        .name(name)
+                        .rootElement(JsonSchemaGenerator.toJsonSchemaElement(schema))
+                        .build())
+                .build();
+    }
+
+    private static ObjectNode wrapInItems(ObjectNode elementSchema) {
+        ObjectNode wrapper = objectMapper.createObjectNode();
+        wrapper.put("type", "object");
+        ObjectNode items = wrapper.putObject("properties").putObject(ITEMS_PROPERTY);
+        items.put("type", "array");
+        // Definitions stay at the top, where references point
+        JsonNode definitions = elementSchema.remove("$defs");
+        items.set("items", elementSchema);
+        wrapper.putArray("required").add(ITEMS_PROPERTY);
+        wrapper.put("additionalProperties", false);
+        if (definitions != null) {
+            wrapper.set("$defs", definitions);
+        }
+        return wrapper;
+    }
+
+    @Override
+    public String outputInstructions(Method method, ReturnTypeInfo typeInfo) {
+        // The schema is passed as the response format instead
+        return "";
+    }
+
+    @Override
+    public Object convertResult(Object result, ReturnTypeInfo typeInfo) {
+        if (result == null) {
+            return null;
+        }
+
+        String answer = (String) result;
+
+        if (typeInfo.isString()) {
+            return answer;
+        }
+        try {
+            if (typeInfo.isList()) {
+                JsonNode items = objectMapper.readTree(answer).get(ITEMS_PROPERTY);
+                if (items == null || !items.isArray()) {
+                    throw new RuntimeException(
+                            "Expected a json object with the array '" + ITEMS_PROPERTY + "', got: " + answer);
+                }
+                return objectMapper.readerForListOf(typeInfo.getValueType()).readValue(items);
+            }
+            return objectMapper.readValue(answer, typeInfo.getValueType());
+        } catch (IOException e) {
+            throw new RuntimeException(
+                    "Answer does not match " + typeInfo.getValueType().getSimpleName() + ": " + e.getMessage()
+                            + "\nAnswer: " + answer,
+                    e);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.llmtoolkit.core;
 
+import java.util.EnumMap;
+import java.util.Map;
 import org.llmtoolkit.core.annotations.Cue;
 import org.llmtoolkit.util.ClassToString;
 
@@ -10,23 +12,151 @@ public class OutputInstructions {
             Provide only json starting with ```. Stop after json.
             You MUST only produce valid JSON that can be parsed without errors.
             Properly escape " in strings.
-            Pay attention to the instructions in @%s annotations.
-            """
-                    .formatted(Cue.class.getSimpleName());
+            """;
+
+    private static final String CUE_FOOTER =
+            "Pay attention to the instructions in @%s annotations.\n".formatted(Cue.class.getSimpleName());
+
+    private static final String DESCRIPTION_FOOTER = "Pay attention to the descriptions in the schema.\n";
+
+    /**
+     * How the return type is described in the instructions
+     */
+    public enum SchemaFormat {
+        /**
+         * Java source of the records, see {@link ClassToString#onlyRecords}
+         */
+        JAVA_SOURCE,
+        /**
+         * One line per type, see {@link ClassToString#compactRecords}
+         */
+        COMPACT_JAVA_SOURCE,
+        /**
+         * JSON Schema document, see {@link JsonSchemaGenerator}
+         */
+        JSON_SCHEMA
+    }
+
+    /*
+     * ClassValue keeps the rendered text on the class itself: racing first calls all get the single installed
+     * value, and the entry is collected together with the class instead of pinning its class loader.
+     */
+    private static final Map<SchemaFormat, ClassValue<Instructions>> INSTRUCTIONS = new EnumMap<>(SchemaFormat.class);
+
+    static {
+        for (SchemaFormat format : SchemaFormat.values()) {
+            INSTRUCTIONS.put(format, new ClassValue<>() {
+                @Override
+                protected Instructions computeValue(Class<?> clazz) {
+                    return Instructions.render(clazz, format);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param schemaTokens estimated tokens of the schema alone
+     */
+    record Instructions(String singleObject, String array, int schemaTokens) {
+        static Instructions render(Class<?> clazz, SchemaFormat format) {
+            String schema =
+                    switch (format) {
+                        case JAVA_SOURCE -> ClassToString.onlyRecords(clazz);
+                        case COMPACT_JAVA_SOURCE ->
+                            ClassToString.compactRecords(clazz).text();
+                        case JSON_SCHEMA -> JsonSchemaGenerator.schemaJsonFor(clazz) + "\n";
+                    };
+            String conformsTo = format == SchemaFormat.JSON_SCHEMA
+                    ? "conforms to the JSON schema of '" + clazz.getSimpleName() + "':\n\n"
+                    : "corresponds to the jackson java bean '" + clazz.getSimpleName() + "':\n\n";
+            String footer =
+                    INSTRUCTIONS_FOOTER + (format == SchemaFormat.JSON_SCHEMA ? DESCRIPTION_FOOTER : CUE_FOOTER);
+            return new Instructions(
+                    "\nOutput results in the single json object that " + conformsTo + schema + footer,
+                    "\n"
+                            + "Output results in the json array of elements [{element1}, ...{elementN}], where each element is a json"
+                            + " object that " + conformsTo
+                            + schema
+                            + footer,
+                    ClassToString.estimateTokens(schema));
+        }
+    }
 
     public static String singleObjectInstructions(Class<?> clazz) {
-        return "\nOutput results in the single json object that corresponds to the jackson java bean '"
-                + clazz.getSimpleName() + "':\n\n"
-                + ClassToString.onlyRecords(clazz)
-                + INSTRUCTIONS_FOOTER;
+        return instructions(clazz, SchemaFormat.JAVA_SOURCE, null).singleObject();
     }
 
     public static String arrayInstructions(Class<?> clazz) {
-        return "\n"
-                + "Output results in the json array of elements [{element1}, ...{elementN}], where each element is a json"
-                + " object that corresponds to the jackson java bean '"
-                + clazz.getSimpleName() + "':\n\n"
-                + ClassToString.onlyRecords(clazz)
+        return instructions(clazz, SchemaFormat.JAVA_SOURCE, null).array();
+    }
+
+    public static String singleObjectInstructions(Class<?> clazz, SchemaFormat format) {
+        return instructions(clazz, format, null).singleObject();
+    }
+
+    public static String arrayInstructions(Class<?> clazz, SchemaFormat format) {
+        return instructions(clazz, format, null).array();
+    }
+
+    /**
+     * Instructions for a json array of strings, numbers or booleans, which need no schema
+     *
+     * @throws IllegalArgumentException if values of the class are not json scalars, see {@link #isScalar}
+     */
+    public static String scalarArrayInstructions(Class<?> clazz) {
+        String jsonType;
+        if (clazz == boolean.class || clazz == Boolean.class) {
+            jsonType = "boolean";
+        } else if (clazz.isPrimitive() && clazz != char.class || Number.class.isAssignableFrom(clazz)) {
+            jsonType = "number";
+        } else if (isScalar(clazz)) {
+            jsonType = "string";
+        } else {
+            throw new IllegalArgumentException("Not a json scalar: " + clazz.getName());
+        }
+        return "\nOutput results in the json array of " + jsonType + " values [value1, ...valueN].\n"
                 + INSTRUCTIONS_FOOTER;
     }
+
+    /**
+     * Whether values of the class are json strings, numbers or booleans
+     */
+    public static boolean isScalar(Class<?> clazz) {
+        return clazz.isPrimitive()
+                || CharSequence.class.isAssignableFrom(clazz)
+                || Number.class.isAssignableFrom(clazz)
+                || clazz == Boolean.class
+                || clazz == Character.class;
+    }
+
+    /**
+     * Same as {@link #singleObjectInstructions(Class)}, but describes the schema compactly
+     * if its full description is estimated to take more tokens than the budget
+     */
+    public static String singleObjectInstructions(Class<?> clazz, int schemaTokenBudget) {
+        return instructions(clazz, SchemaFormat.JAVA_SOURCE, schemaTokenBudget).singleObject();
+    }
+
+    /**
+     * Same as {@link #arrayInstructions(Class)}, but describes the schema compactly
+     * if its full description is estimated to take more tokens than the budget
+     */
+    public static String arrayInstructions(Class<?> clazz, int schemaTokenBudget) {
+        return instructions(clazz, SchemaFormat.JAVA_SOURCE, schemaTokenBudget).array();
+    }
+
+    /**
+     * @param schemaTokenBudget estimated schema tokens above which {@link SchemaFormat#COMPACT_JAVA_SOURCE}
+     *                          is used instead of {@link SchemaFormat#JAVA_SOURCE}, no limit if null.
+     *                          A JSON schema is already compact, so it is kept whatever its size.
+     */
+    static Instructions instructions(Class<?> clazz, SchemaFormat format, Integer schemaTokenBudget) {
+        Instructions instructions = INSTRUCTIONS.get(format).get(clazz);
+        if (schemaTokenBudget == null
+                || format != SchemaFormat.JAVA_SOURCE
+                || instructions.schemaTokens() <= schemaTokenBudget) {
+            return instructions;
+        }
+        return INSTRUCTIONS.get(SchemaFormat.COMPACT_JAVA_SOURCE).get(clazz);
+    }
 }
@@ -3,7 +3,9 @@ package org.llmtoolkit.core;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.service.AiServices;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public interface ResponseStructuringStrategy {
 
@@ -18,9 +20,39 @@ public interface ResponseStructuringStrategy {
     Object invokeService(Object service, String prompt, Method originalMethod);
 
     /**
-     * Prepares the prompt before sending it to the LLM
+     * Resolves the service method once, so that the returned function can be called with prompts
+     * without looking anything up per call
      */
-    String augmentPromptWithOutputInstructions(String prompt, Method method, ReturnTypeInfo typeInfo);
+    default Function<String, Object> prepareServiceCall(Object service, Method originalMethod) {
+        return prompt -> invokeService(service, prompt, originalMethod);
+    }
+
+    /**
+     * Output instructions appended to every prompt of the method, empty if none are needed.
+     * Depends only on the method, so it is computed once per method.
+     * -
+     * Null by default, in which case every prompt is passed to {@link #augmentPromptWithOutputInstructions}
+     * instead, so that strategies implementing only that method keep working.
+     */
+    default String outputInstructions(Method method, ReturnTypeInfo typeInfo) {
+        return null;
+    }
+
+    /**
+     * Prepares the prompt before sending it to the LLM.
+     * Called for every prompt, but only if {@link #outputInstructions} returns null.
+     */
+    default String augmentPromptWithOutputInstructions(String prompt, Method method, ReturnTypeInfo typeInfo) {
+        String instructions = outputInstructions(method, typeInfo);
+        return instructions == null ? prompt : prompt + instructions;
+    }
+
+    /**
+     * Type of the result returned by the service call, before {@link #convertResult}
+     */
+    default Type rawResultType(ReturnTypeInfo typeInfo) {
+        return String.class;
+    }
 
     /**
      * Processes the result returned from the LLM service
@@ -0,0 +1,228 @@
+package org.llmtoolkit.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.NonRetriableException;
+import dev.langchain4j.exception.RetriableException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retries model calls that failed for transient reasons, e.g. rate limits, overloaded servers or timeouts.
+ * -
+ * Waits between attempts grow exponentially with full jitter, so that many callers failing at once
+ * do not retry in lockstep. Retries stop at the maximum number of attempts, at the deadline of the call,
+ * or when the retry budget shared by all calls is spent, which keeps an outage from multiplying the load.
+ * With a deadline, attempts run on a separate thread and one still running at the deadline is interrupted.
+ * One policy instance is meant to be shared by all calls to a provider.
+ */
+@Slf4j
+public class RetryPolicy {
+    private static final ExecutorService ATTEMPT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("retry-attempt-%d")
+            .setDaemon(true)
+            .build());
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration deadline;
+
+    @Getter
+    private final boolean isToRetryOnParseFailure;
+
+    private final Predicate<Throwable> isRetryable;
+    private final RetryBudget budget;
+
+    /**
+     * @param maxAttempts             attempts including the first one, 3 by default
+     * @param initialBackoff          upper bound of the first wait, 1 second by default
+     * @param maxBackoff              upper bound of any wait, 30 seconds by default
+     * @param deadline                time from the start of the first attempt within which the call must finish:
+     *                                a running attempt is cancelled when it passes, and no retry is started
+     *                                that could not finish before it. No limit if null
+     * @param retryBudgetRatio        retries allowed per call on average, 0.2 by default
+     * @param isToRetryOnParseFailure whether to ask again when the answer cannot be converted to the return type
+     * @param isRetryable             which failures are transient, see {@link #isTransient} for the default
+     */
+    @Builder
+    private RetryPolicy(
+            Integer maxAttempts,
+            Duration initialBackoff,
+            Duration maxBackoff,
+            Duration deadline,
+            Double retryBudgetRatio,
+            boolean isToRetryOnParseFailure,
+            Predicate<Throwable> isRetryable) {
+        this.maxAttempts = maxAttempts == null ? 3 : maxAttempts;
+        if (this.maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1: " + maxAttempts);
+        }
+        this.initialBackoff = initialBackoff == null ? Duration.ofSeconds(1) : initialBackoff;
+        this.maxBackoff = maxBackoff == null ? Duration.ofSeconds(30) : maxBackoff;
+        this.deadline = deadline;
+        this.isToRetryOnParseFailure = isToRetryOnParseFailure;
+        this.isRetryable = isRetryable == null ? RetryPolicy::isTransient : isRetryable;
+        this.budget = new RetryBudget(retryBudgetRatio == null ? 0.2 : retryBudgetRatio);
+    }
+
+    /**
+     * Runs the call, retrying transient failures
+     */
+    public <T> T execute(Supplier<T> call) {
+        return execute(call, e -> false);
+    }
+
+    /**
+     * @param isParseFailure tells failures to convert an answer apart, those are retried
+     *                       only if {@link #isToRetryOnParseFailure()}
+     */
+    <T> T execute(Supplier<T> call, Predicate<RuntimeException> isParseFailure) {
+        long start = System.nanoTime();
+        budget.deposit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return attempt(call, start);
+            } catch (RuntimeException e) {
+                boolean isParse = isParseFailure.test(e);
+                if (isParse ? !isToRetryOnParseFailure : !isRetryable.test(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                long backoffNanos = backoffNanos(attempt);
+                if (deadline != null && System.nanoTime() + backoffNanos - start > deadline.toNanos()) {
+                    e.addSuppressed(new TimeoutException("Not retried, the deadline of " + deadline + " would pass"));
+                    throw e;
+                }
+                if (!budget.withdraw()) {
+                    e.addSuppressed(new IllegalStateException("Not retried, the retry budget is spent"));
+                    throw e;
+                }
+                log.warn(
+                        "Attempt {} of {} failed{}, retrying in {} ms: {}",
+                        attempt,
+                        maxAttempts,
+                        isParse ? " to parse the answer" : "",
+                        backoffNanos / 1_000_000,
+                        e.toString());
+                sleep(backoffNanos, e);
+            }
+        }
+    }
+
+    // Runs the attempt within the time left until the deadline
+    private <T> T attempt(Supplier<T> call, long start) {
+        if (deadline == null) {
+            return call.get();
+        }
+        Future<T> attempt = ATTEMPT_EXECUTOR.submit(call::get);
+        try {
+            return attempt.get(start + deadline.toNanos() - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            attempt.cancel(true);
+            throw new RuntimeException("Call did not finish within the deadline of " + deadline, e);
+        } catch (InterruptedException e) {
+            attempt.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the call", e);
+        }
+    }
+
+    /**
+     * Default classification: Langchain4j's retriable exceptions, HTTP 408, 429 and 5xx responses,
+     * timeouts and refused connections anywhere in the cause chain are transient
+     */
+    public static boolean isTransient(Throwable failure) {
+        for (Throwable e = failure; e != null; e = e.getCause()) {
+            if (e instanceof NonRetriableException) {
+                return false;
+            }
+            if (e instanceof RetriableException
+                    || e instanceof TimeoutException
+                    || e instanceof HttpTimeoutException
+                    || e instanceof InterruptedIOException
+                    || e instanceof ConnectException) {
+                return true;
+            }
+            if (e instanceof HttpException http) {
+                int status = http.statusCode();
+                return status == 408 || status == 429 || status >= 500;
+            }
+            if (e.getCause() == e) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    // Full jitter: uniformly random up to the exponential bound
+    private long backoffNanos(int attempt) {
+        long bound = Math.min(maxBackoff.toNanos(), initialBackoff.toNanos() * (1L << Math.min(attempt - 1, 30)));
+        return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    private static void sleep(long nanos, RuntimeException failure) {
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.addSuppressed(e);
+            throw failure;
+        }
+    }
+
+    /**
+     * Every call earns a fraction of a retry, every retry spends a whole one.
+     * Starts with a few retries, so that a failure right after startup can be retried.
+     */
+    private static class RetryBudget {
+        private static final double INITIAL_RETRIES = 10;
+        private static final double MAX_RETRIES = 100;
+
+        private final double ratio;
+        private double available = INITIAL_RETRIES;
+
+        RetryBudget(double ratio) {
+            if (ratio < 0) {
+                throw new IllegalArgumentException("Retry budget ratio must not be negative: " + ratio);
+            }
+            this.ratio = ratio;
+        }
+
+        synchronized void deposit() {
+            available = Math.min(MAX_RETRIES, available + ratio);
+        }
+
+        synchronized boolean withdraw() {
+            if (available < 1) {
+                return false;
+            }
+            available--;
+            return true;
+        }
+    }
+}
@@ -3,20 +3,31 @@ package org.llmtoolkit.core;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
- * Represents return type information with validation logic
+ * Represents return type information with validation logic.
+ * A {@code CompletableFuture<T>} return type is unwrapped, and the same rules apply to {@code T}.
+ * A {@code Flow.Publisher<T>} return type streams the elements of a list of {@code T}.
  */
 public class ReturnTypeInfo {
+    private final Type resultType;
     private final Class<?> valueType;
     private final boolean isList;
     private final boolean isString;
+    private final boolean isAsync;
+    private final boolean isStreaming;
 
     private ReturnTypeInfo(Type originalType) {
-        this.valueType = extractValueType(originalType);
-        this.isList = originalType instanceof ParameterizedType
-                && ((ParameterizedType) originalType).getRawType() == List.class;
-        this.isString = originalType == String.class;
+        this.resultType = unwrapAsync(originalType);
+        this.valueType = extractValueType(resultType);
+        this.isStreaming = isPublisher(originalType);
+        this.isList = isStreaming
+                || (resultType instanceof ParameterizedType
+                        && ((ParameterizedType) resultType).getRawType() == List.class);
+        this.isString = resultType == String.class;
+        this.isAsync = resultType != originalType && !isStreaming;
     }
 
     public static ReturnTypeInfo from(Type type) {
@@ -24,7 +35,24 @@ public class ReturnTypeInfo {
     }
 
     public static void validateType(Type type) {
-        extractValueType(type); // Will throw if invalid
+        Type resultType = unwrapAsync(type);
+        if (isPublisher(type) && !(resultType instanceof Class<?>)) {
+            throw new UnsupportedOperationException(
+                    "Flow.Publisher element type must be a class (e.g., Flow.Publisher<CustomClass>)");
+        }
+        extractValueType(resultType); // Will throw if invalid
+    }
+
+    private static Type unwrapAsync(Type type) {
+        if (type instanceof ParameterizedType paramType
+                && (paramType.getRawType() == CompletableFuture.class || isPublisher(type))) {
+            return paramType.getActualTypeArguments()[0];
+        }
+        return type;
+    }
+
+    private static boolean isPublisher(Type type) {
+        return type instanceof ParameterizedType paramType && paramType.getRawType() == Flow.Publisher.class;
     }
 
     private static Class<?> extractValueType(Type returnType) {
@@ -40,7 +68,8 @@ public class ReturnTypeInfo {
             }
         }
         throw new UnsupportedOperationException(
-                "Return type must be either a class (e.g., String, CustomClass) or List<Class> (e.g., List<String>). "
+                "Return type must be either a class (e.g., String, CustomClass) or List<Class> (e.g., List<String>), "
+                        + "optionally wrapped in CompletableFuture. "
                         + "Unsupported types include: Map<K,V>, List<List<T>>, List<?>, generic type parameters.");
     }
 
@@ -54,6 +83,13 @@ public class ReturnTypeInfo {
         }
     }
 
+    /**
+     * The declared return type, or {@code T} for {@code CompletableFuture<T>} and {@code Flow.Publisher<T>}
+     */
+    public Type getResultType() {
+        return resultType;
+    }
+
     public Class<?> getValueType() {
         return valueType;
     }
@@ -65,4 +101,12 @@ public class ReturnTypeInfo {
     public boolean isString() {
         return isString;
     }
+
+    public boolean isAsync() {
+        return isAsync;
+    }
+
+    public boolean isStreaming() {
+        return isStreaming;
+    }
 }
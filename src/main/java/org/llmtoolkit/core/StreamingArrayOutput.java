@@ -0,0 +1,157 @@
+package org.llmtoolkit.core;
+
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+import org.llmtoolkit.util.json.IncrementalJsonArrayParser;
+import org.llmtoolkit.util.json.JsonUtils;
+
+/**
+ * Structured array answers from a streaming model: every element of the JSON array is parsed and handed over
+ * as soon as its closing brace arrives, while the model is still generating the rest of the answer.
+ * The prompt must ask for a JSON array, e.g. by appending {@link OutputInstructions#arrayInstructions(Class)}.
+ */
+public class StreamingArrayOutput {
+
+    /**
+     * Streams the answer, passing each element to the callback in order
+     *
+     * @return future completed with all elements once the answer is complete, failed if the answer ends
+     *         before the array is closed, e.g. at the token limit
+     */
+    public static <T> CompletableFuture<List<T>> stream(
+            StreamingChatModel model, String prompt, Class<T> elementClass, Consumer<T> onElement) {
+        return stream(model, prompt, elementClass, onElement, new CompletableFuture<>());
+    }
+
+    /**
+     * @param result completed by the answer, or cancelled to ignore the rest of it
+     */
+    private static <T> CompletableFuture<List<T>> stream(
+            StreamingChatModel model,
+            String prompt,
+            Class<T> elementClass,
+            Consumer<T> onElement,
+            CompletableFuture<List<T>> result) {
+        List<T> elements = new ArrayList<>();
+        Consumer<T> collector = element -> {
+            elements.add(element);
+            onElement.accept(element);
+        };
+        IncrementalJsonArrayParser parser = new IncrementalJsonArrayParser(
+                json -> collector.accept(JsonUtils.parseJsonOrYamlObject(json, elementClass)));
+
+        StreamingChatResponseHandler handler = new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    parser.feed(partialResponse);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse response) {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    parser.finish();
+                    if (parser.isTruncated()) {
+                        // Repairing the rest would make up values for what was cut off
+                        throw new RuntimeException("The answer ended before the array was closed, after "
+                                + parser.getEmittedCount() + " elements");
+                    }
+                    if (parser.getEmittedCount() == 0) {
+                        // Not a streamable JSON array (e.g. YAML, an empty array or one inside prose), parse the whole
+                        // answer
+                        JsonUtils.parseJsonOrYamlArray(response.aiMessage().text(), elementClass)
+                                .forEach(collector);
+                    }
+                    result.complete(elements);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+        };
+
+        try {
+            model.chat(prompt, handler);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Cold publisher of the answer elements: every subscription sends the prompt to the model again.
+     * Cancelling the subscription stops parsing and publishing the answer. Langchain4j cannot abort
+     * a streaming request, so the rest of the answer is still received, and dropped.
+     */
+    public static <T> Flow.Publisher<T> publish(StreamingChatModel model, String prompt, Class<T> elementClass) {
+        return subscriber -> {
+            SubmissionPublisher<T> publisher = new SubmissionPublisher<>();
+            CompletableFuture<List<T>> result = new CompletableFuture<>();
+            publisher.subscribe(new CancellingSubscriber<>(subscriber, () -> result.cancel(false)));
+            stream(model, prompt, elementClass, publisher::submit, result).whenComplete((elements, error) -> {
+                if (error != null) {
+                    publisher.closeExceptionally(error);
+                } else {
+                    publisher.close();
+                }
+            });
+        };
+    }
+
+    /**
+     * Passes everything on to the subscriber, and runs the callback when the subscriber cancels
+     */
+    private record CancellingSubscriber<T>(Flow.Subscriber<? super T> subscriber, Runnable onCancel)
+            implements Flow.Subscriber<T> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                    onCancel.run();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(T item) {
+            subscriber.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            subscriber.onComplete();
+        }
+    }
+}
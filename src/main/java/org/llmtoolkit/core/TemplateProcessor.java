@@ -1,6 +1,7 @@
 package org.llmtoolkit.core;
 
 import java.lang.reflect.Method;
+import java.util.function.Function;
 
 public interface TemplateProcessor {
     /**
@@ -20,4 +21,16 @@ public interface TemplateProcessor {
      * @throws IllegalArgumentException if parameters are invalid
      */
     String preparePrompt(Method method, Object[] args);
+
+    /**
+     * Resolves everything about the method that does not depend on invocation arguments,
+     * so that rendering a prompt for an invocation does no reflection
+     *
+     * @param method Method to extract template path and parameters from
+     * @return Function rendering the prompt from method invocation arguments
+     * @throws IllegalArgumentException if the method is not a valid template method
+     */
+    default Function<Object[], String> prepareRenderer(Method method) {
+        return args -> preparePrompt(method, args);
+    }
 }
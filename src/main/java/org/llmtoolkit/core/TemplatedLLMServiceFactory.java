@@ -1,15 +1,31 @@
 package org.llmtoolkit.core;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
 import dev.langchain4j.service.AiServices;
 import java.lang.reflect.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import lombok.Builder;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.llmtoolkit.core.annotations.PT;
+import org.llmtoolkit.core.cache.ResponseCache;
+import org.llmtoolkit.core.cache.ResponseCache.CachedValue;
+import org.llmtoolkit.core.cache.ResponseCacheKey;
 import org.llmtoolkit.util.Do;
+import org.llmtoolkit.util.PromptCaching;
 
 @Slf4j
 @Builder
@@ -20,13 +36,83 @@ public class TemplatedLLMServiceFactory {
     @NonNull
     private final TemplateProcessor templateProcessor;
 
+    /**
+     * Required only for methods returning Flow.Publisher
+     */
+    private StreamingChatModel streamingModel;
+
     private Consumer<AiServices<?>> aiServiceCustomizer;
     private boolean isToPrintPrompt;
     private boolean isToPrintAnswer;
 
+    /**
+     * Puts output instructions before the rendered prompt instead of after it, so that prompts of a method
+     * share a long stable prefix. Models that understand a {@link PromptCaching#BREAKPOINT} get one after it,
+     * e.g. those of {@code AnthropicChatModelProvider}, which send the prefix as a cached one;
+     * OpenAI caches such prefixes by itself.
+     */
+    private boolean isToCachePromptPrefix;
+
+    /**
+     * Optional cache of answers keyed by model, processed prompt and return type.
+     * Streaming methods are not cached.
+     */
+    private ResponseCache responseCache;
+
+    /**
+     * Model name in response cache keys, e.g. {@link org.llmtoolkit.basicllm.BasicLLM#getModel()}.
+     * Defaults to the model name of the model's default request parameters. Some models, e.g. Anthropic ones,
+     * do not report it there, so it is required for them when a response cache is set.
+     * -
+     * Keys also hold the default request parameters, e.g. temperature. Models that do not report them
+     * need a modelId that tells their configurations apart, e.g. {@code claude-sonnet-4/thinking-2048}.
+     */
+    private String modelId;
+
+    @Builder.Default
+    private CachedValue cachedValue = CachedValue.RAW_ANSWER;
+
+    /**
+     * Optional retries of failed model calls, and of answers that cannot be parsed if the policy asks for it.
+     * Streaming methods are not retried.
+     */
+    private RetryPolicy retryPolicy;
+
+    /**
+     * Whether concurrent calls with the same model, processed prompt and return type share one model call.
+     * Each caller still gets its own converted result. Streaming methods are not shared.
+     */
+    private boolean isToShareInFlightCalls;
+
+    private final Map<ResponseCacheKey, CompletableFuture<Object>> inFlightCalls = new ConcurrentHashMap<>();
+
     @Builder.Default
     private ResponseStructuringStrategy serviceStrategy = new JacksonSourceResponseStructuringStrategy();
 
+    /**
+     * Runs prompt rendering, the model call and parsing for methods returning CompletableFuture
+     */
+    @Builder.Default
+    private Executor asyncExecutor = DEFAULT_ASYNC_EXECUTOR;
+
+    private static final Executor DEFAULT_ASYNC_EXECUTOR = createDefaultAsyncExecutor();
+
+    /*
+     * Model calls spend tens of seconds waiting on the network, so virtual threads are preferred.
+     * They are looked up reflectively, as the toolkit still runs on Java 17.
+     */
+    private static Executor createDefaultAsyncExecutor() {
+        try {
+            return (Executor)
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("llm-service-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public <T> T create(Class<T> serviceInterface) {
         if (!serviceInterface.isInterface()) {
@@ -40,7 +126,25 @@ public class TemplatedLLMServiceFactory {
         return (T) Proxy.newProxyInstance(
                 serviceInterface.getClassLoader(),
                 new Class<?>[] {serviceInterface},
-                new ServiceInvocationHandler(service));
+                new ServiceInvocationHandler(
+                        planInvocations(serviceInterface, service),
+                        cacheModelId(),
+                        PromptCaching.understandsBreakpoints(model) ? PromptCaching.BREAKPOINT : "\n\n"));
+    }
+
+    private String cacheModelId() {
+        ChatRequestParameters parameters = model.defaultRequestParameters();
+        String modelName = modelId != null ? modelId : parameters.modelName();
+        if (modelName == null) {
+            if (responseCache != null) {
+                throw new IllegalArgumentException("A responseCache requires a modelId, as "
+                        + model.getClass().getName() + " does not report its model name");
+            }
+            // Keys of calls in flight are only compared within this factory, where the model is fixed
+            modelName = model.getClass().getName();
+        }
+        // Differently configured models answer differently, and the parameters' toString lists all their values
+        return model.provider() + "/" + modelName + " " + parameters;
     }
 
     private <T> void validateInterface(Class<T> serviceInterface) {
@@ -53,14 +157,69 @@ public class TemplatedLLMServiceFactory {
 
     private void validateMethod(Method method) {
         ReturnTypeInfo.validateType(method.getGenericReturnType());
+        if (streamingModel == null
+                && ReturnTypeInfo.from(method.getGenericReturnType()).isStreaming()) {
+            throw new IllegalArgumentException(
+                    "Methods returning Flow.Publisher require a streamingModel: " + method.getName());
+        }
         templateProcessor.validateTemplate(method);
     }
 
+    /**
+     * Everything about a service method that does not depend on invocation arguments
+     */
+    private record InvocationPlan(
+            Method method,
+            Function<Object[], String> promptRenderer,
+            // Null if the strategy augments every prompt instead
+            String outputInstructions,
+            Function<String, Object> serviceCall,
+            ReturnTypeInfo typeInfo,
+            Type rawResultType) {}
+
+    /*
+     * Keyed by Method equality rather than identity: the proxy passes its own copies of the interface methods,
+     * and Method.equals/hashCode compare already resolved fields without any reflective lookup.
+     * Output instructions are rendered here, so the schemas of all result types are warm once create() returns.
+     */
+    private <T> Map<Method, InvocationPlan> planInvocations(Class<T> serviceInterface, Object service) {
+        Map<Method, InvocationPlan> plans = new HashMap<>();
+        for (Method method : serviceInterface.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(PT.class)) {
+                ReturnTypeInfo typeInfo = ReturnTypeInfo.from(method.getGenericReturnType());
+                plans.put(
+                        method,
+                        new InvocationPlan(
+                                method,
+                                templateProcessor.prepareRenderer(method),
+                                typeInfo.isStreaming()
+                                        ? streamingInstructions(typeInfo.getValueType())
+                                        : serviceStrategy.outputInstructions(method, typeInfo),
+                                serviceStrategy.prepareServiceCall(service, method),
+                                typeInfo,
+                                serviceStrategy.rawResultType(typeInfo)));
+            }
+        }
+        return Map.copyOf(plans);
+    }
+
+    // Streamed elements are cut out of a JSON array, so streaming methods ask for one whatever the strategy
+    private static String streamingInstructions(Class<?> elementType) {
+        return OutputInstructions.isScalar(elementType)
+                ? OutputInstructions.scalarArrayInstructions(elementType)
+                : "\n" + OutputInstructions.arrayInstructions(elementType);
+    }
+
     private class ServiceInvocationHandler implements InvocationHandler {
-        private final Object service;
+        private final Map<Method, InvocationPlan> plans;
+        private final String modelId;
+        private final String promptPrefixSeparator;
 
-        public ServiceInvocationHandler(Object service) {
-            this.service = service;
+        public ServiceInvocationHandler(
+                Map<Method, InvocationPlan> plans, String modelId, String promptPrefixSeparator) {
+            this.plans = plans;
+            this.modelId = modelId;
+            this.promptPrefixSeparator = promptPrefixSeparator;
         }
 
         @Override
@@ -69,18 +228,46 @@ public class TemplatedLLMServiceFactory {
                 return method.invoke(this, args);
             }
 
-            String templatePrompt = templateProcessor.preparePrompt(method, args);
-            ReturnTypeInfo typeInfo = ReturnTypeInfo.from(method.getGenericReturnType());
+            InvocationPlan plan = plans.get(method);
+            if (plan == null) {
+                throw new IllegalStateException("Method must be annotated with @" + PT.class.getSimpleName());
+            }
+
+            if (plan.typeInfo().isAsync()) {
+                return CompletableFuture.supplyAsync(() -> execute(plan, args), asyncExecutor);
+            }
+
+            if (plan.typeInfo().isStreaming()) {
+                return stream(plan, args);
+            }
+
+            return execute(plan, args);
+        }
+
+        private Flow.Publisher<?> stream(InvocationPlan plan, Object[] args) {
+            // The streaming model may be another provider, so the prefix gets no breakpoint
+            String processedPrompt = processPrompt(plan, args, "\n\n");
+            Do.once(() -> printPrompt(processedPrompt), isToPrintPrompt);
+            return StreamingArrayOutput.publish(
+                    streamingModel, processedPrompt, plan.typeInfo().getValueType());
+        }
 
-            final String processedPrompt =
-                    serviceStrategy.augmentPromptWithOutputInstructions(templatePrompt, method, typeInfo);
+        private Object execute(InvocationPlan plan, Object[] args) {
+            final String processedPrompt = processPrompt(plan, args, promptPrefixSeparator);
 
             Do printPrompt = Do.once(() -> printPrompt(processedPrompt), isToPrintPrompt);
 
-            Object rawResult = withPrintOnError(
-                    () -> serviceStrategy.invokeService(service, processedPrompt, method), printPrompt);
+            ResponseCacheKey cacheKey = responseCache == null && !isToShareInFlightCalls
+                    ? null
+                    : new ResponseCacheKey(
+                            modelId,
+                            processedPrompt,
+                            plan.typeInfo().getResultType().getTypeName());
 
-            final Object processedResult = serviceStrategy.convertResult(rawResult, typeInfo);
+            Object cachedResult = getCached(
+                    cacheKey, CachedValue.CONVERTED_RESULT, plan.typeInfo().getResultType());
+            final Object processedResult =
+                    cachedResult != null ? cachedResult : callAndConvert(plan, processedPrompt, cacheKey, printPrompt);
 
             Do printAnswer = Do.once(
                     () -> {
@@ -93,6 +280,99 @@ public class TemplatedLLMServiceFactory {
             return withPrintOnError(() -> processedResult, printPrompt, printAnswer);
         }
 
+        private String processPrompt(InvocationPlan plan, Object[] args, String prefixSeparator) {
+            String renderedPrompt = plan.promptRenderer().apply(args);
+            if (plan.outputInstructions() == null) {
+                return serviceStrategy.augmentPromptWithOutputInstructions(
+                        renderedPrompt, plan.method(), plan.typeInfo());
+            }
+            if (!isToCachePromptPrefix || plan.outputInstructions().isEmpty()) {
+                return renderedPrompt + plan.outputInstructions();
+            }
+            return plan.outputInstructions().strip() + prefixSeparator + renderedPrompt;
+        }
+
+        private Object callAndConvert(
+                InvocationPlan plan, String processedPrompt, ResponseCacheKey cacheKey, Do printPrompt) {
+            if (retryPolicy == null) {
+                return callAndConvertOnce(plan, processedPrompt, cacheKey, printPrompt, new boolean[1]);
+            }
+            boolean[] isConverting = new boolean[1];
+            return retryPolicy.execute(
+                    () -> callAndConvertOnce(plan, processedPrompt, cacheKey, printPrompt, isConverting),
+                    e -> isConverting[0]);
+        }
+
+        /**
+         * @param isConverting set while the answer is converted, to tell parse failures apart from failed calls
+         */
+        private Object callAndConvertOnce(
+                InvocationPlan plan,
+                String processedPrompt,
+                ResponseCacheKey cacheKey,
+                Do printPrompt,
+                boolean[] isConverting) {
+            isConverting[0] = false;
+            Object cachedAnswer = getCached(cacheKey, CachedValue.RAW_ANSWER, plan.rawResultType());
+            Object rawResult = cachedAnswer != null
+                    ? cachedAnswer
+                    : withPrintOnError(
+                            () -> callShared(cacheKey, () -> plan.serviceCall().apply(processedPrompt)), printPrompt);
+
+            isConverting[0] = true;
+            Object processedResult = serviceStrategy.convertResult(rawResult, plan.typeInfo());
+            isConverting[0] = false;
+
+            // Stored only after a successful conversion, so that an unparsable answer is asked again
+            if (cachedAnswer == null) {
+                putCached(cacheKey, CachedValue.RAW_ANSWER, rawResult);
+            }
+            putCached(cacheKey, CachedValue.CONVERTED_RESULT, processedResult);
+            return processedResult;
+        }
+
+        /**
+         * Joins an identical call in flight if there is one, otherwise makes the call for everyone joining it
+         */
+        private Object callShared(ResponseCacheKey key, Supplier<Object> call) {
+            if (!isToShareInFlightCalls) {
+                return call.get();
+            }
+            CompletableFuture<Object> ownCall = new CompletableFuture<>();
+            CompletableFuture<Object> sharedCall = inFlightCalls.putIfAbsent(key, ownCall);
+            if (sharedCall != null) {
+                try {
+                    return sharedCall.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof Error error) {
+                        throw error;
+                    }
+                    throw e.getCause() instanceof RuntimeException cause ? cause : e;
+                }
+            }
+            try {
+                Object result = call.get();
+                ownCall.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                // Errors too, otherwise callers that joined would wait forever
+                ownCall.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlightCalls.remove(key, ownCall);
+            }
+        }
+
+        private Object getCached(ResponseCacheKey cacheKey, CachedValue kind, Type valueType) {
+            return responseCache != null && cachedValue == kind ? responseCache.get(cacheKey, valueType) : null;
+        }
+
+        private void putCached(ResponseCacheKey cacheKey, CachedValue kind, Object value) {
+            if (responseCache != null && cachedValue == kind && value != null) {
+                responseCache.put(cacheKey, value);
+            }
+        }
+
         private <T> T withPrintOnError(Supplier<T> action, Do... printActions) {
             try {
                 return action.get();
@@ -0,0 +1,88 @@
+package org.llmtoolkit.core.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps values in a directory, one file per key, so answers survive restarts and can be replayed offline.
+ * String values are stored as plain text, other values as JSON read back with the requested type.
+ * Entries never expire; delete the files to invalidate them.
+ */
+public class FileResponseCache implements ResponseCache {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Path directory;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FileResponseCache(Path directory) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create cache directory " + directory, e);
+        }
+    }
+
+    @Override
+    public Object get(ResponseCacheKey key, Type valueType) {
+        Path file = file(key, valueType == String.class);
+        try {
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            hits.increment();
+            return valueType == String.class
+                    ? content
+                    : OBJECT_MAPPER.readValue(content, OBJECT_MAPPER.constructType(valueType));
+        } catch (NoSuchFileException e) {
+            misses.increment();
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read cache entry " + file, e);
+        }
+    }
+
+    @Override
+    public void put(ResponseCacheKey key, Object value) {
+        boolean isString = value instanceof String;
+        Path file = file(key, isString);
+        try {
+            String content = isString ? (String) value : OBJECT_MAPPER.writeValueAsString(value);
+            // Readers never see a partially written entry
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            Files.writeString(temp, content, StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write cache entry " + file, e);
+        }
+    }
+
+    @Override
+    public ResponseCacheStats getStats() {
+        return new ResponseCacheStats(hits.sum(), misses.sum(), 0);
+    }
+
+    private Path file(ResponseCacheKey key, boolean isString) {
+        String hash = Hashing.sha256()
+                .newHasher()
+                .putString(key.modelId(), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(key.resultType(), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(key.prompt(), StandardCharsets.UTF_8)
+                .hash()
+                .toString();
+        return directory.resolve(hash + (isString ? ".txt" : ".json"));
+    }
+}
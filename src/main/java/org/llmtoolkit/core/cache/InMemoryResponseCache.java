@@ -0,0 +1,52 @@
+package org.llmtoolkit.core.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import lombok.Builder;
+
+/**
+ * Keeps values on the heap, bounded by entry count and optionally by age
+ */
+public class InMemoryResponseCache implements ResponseCache {
+    private static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private final Cache<ResponseCacheKey, Object> cache;
+
+    /**
+     * @param maximumSize      maximum number of entries, least recently used ones are evicted first
+     * @param expireAfterWrite entry lifetime, entries never expire if null
+     */
+    @Builder
+    private InMemoryResponseCache(Long maximumSize, Duration expireAfterWrite) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize == null ? DEFAULT_MAXIMUM_SIZE : maximumSize)
+                .recordStats();
+        if (expireAfterWrite != null) {
+            builder.expireAfterWrite(expireAfterWrite);
+        }
+        this.cache = builder.build();
+    }
+
+    @Override
+    public Object get(ResponseCacheKey key, Type valueType) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(ResponseCacheKey key, Object value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    public ResponseCacheStats getStats() {
+        CacheStats stats = cache.stats();
+        return new ResponseCacheStats(stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
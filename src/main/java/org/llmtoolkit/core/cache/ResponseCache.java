@@ -0,0 +1,34 @@
+package org.llmtoolkit.core.cache;
+
+import java.lang.reflect.Type;
+
+/**
+ * Storage for answers of templated service calls, see {@code TemplatedLLMServiceFactory.responseCache}
+ */
+public interface ResponseCache {
+
+    /**
+     * What the factory stores in the cache
+     */
+    enum CachedValue {
+        /**
+         * The answer before conversion, usually the model text. Cached answers are converted again on every hit,
+         * so conversion changes apply to replayed answers.
+         */
+        RAW_ANSWER,
+        /**
+         * The converted method result, skipping conversion on hits
+         */
+        CONVERTED_RESULT
+    }
+
+    /**
+     * @param valueType type of the stored value, needed by backends that serialize values
+     * @return the cached value, or null on a miss
+     */
+    Object get(ResponseCacheKey key, Type valueType);
+
+    void put(ResponseCacheKey key, Object value);
+
+    ResponseCacheStats getStats();
+}
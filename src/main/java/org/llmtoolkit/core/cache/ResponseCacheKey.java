@@ -0,0 +1,10 @@
+package org.llmtoolkit.core.cache;
+
+/**
+ * Identifies an answer: the same processed prompt sent to the same model for the same return type
+ *
+ * @param modelId    provider, model name and default request parameters of the chat model
+ * @param prompt     the final prompt, including output instructions
+ * @param resultType type name of the method result, e.g. {@code java.util.List<com.example.Person>}
+ */
+public record ResponseCacheKey(String modelId, String prompt, String resultType) {}
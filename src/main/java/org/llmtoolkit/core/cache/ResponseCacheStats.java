@@ -0,0 +1,9 @@
+package org.llmtoolkit.core.cache;
+
+public record ResponseCacheStats(long hits, long misses, long evictions) {
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
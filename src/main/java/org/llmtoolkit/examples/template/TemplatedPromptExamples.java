@@ -4,6 +4,7 @@ import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import dev.langchain4j.service.Result;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.llmtoolkit.basicllm.CommonLLMs;
 import org.llmtoolkit.core.*;
@@ -72,6 +73,15 @@ public class TemplatedPromptExamples {
                 @PP("chooseFrom") ChooseFrom chooseFrom);
     }
 
+    interface ProgrammingLanguagesServiceAsync {
+
+        @PT(templatePath = "programming_languages_prompt.jte")
+        CompletableFuture<List<ProgrammingLanguages.Language>> getBestLanguagesAsList(
+                @PP("count") int count,
+                @PP("examplesCount") int examplesCount1,
+                @PP("chooseFrom") ChooseFrom chooseFrom);
+    }
+
     /*
      * When creating a service using TemplatedLLMServiceFactory:
      * - @PT annotation specifies which template to use for the prompt
@@ -95,6 +105,7 @@ public class TemplatedPromptExamples {
         demo_returningObject_jacksonBeanStructure();
         demo_returningObject_withLangChain4jResult();
         demo_returningList_jacksonBeanStructure();
+        demo_returningFuture_jacksonBeanStructure();
         demo_returningString_jacksonBeanStructure();
         demo_returningString_jsonSchemaStructure();
     }
@@ -148,6 +159,27 @@ public class TemplatedPromptExamples {
                 SerArray.from(languages, ProgrammingLanguages.Language.class).toYaml());
     }
 
+    /*
+     * Methods returning CompletableFuture run on the factory's asyncExecutor (virtual threads where available),
+     * so many prompts can be in flight without blocking the caller's threads.
+     */
+    private static void demo_returningFuture_jacksonBeanStructure() {
+        ProgrammingLanguagesServiceAsync service = TemplatedLLMServiceFactory.builder()
+                .model(MODEL)
+                .templateProcessor(JteTemplateProcessor.create())
+                .build()
+                .create(ProgrammingLanguagesServiceAsync.class);
+
+        List<CompletableFuture<List<ProgrammingLanguages.Language>>> futures = List.of(
+                service.getBestLanguagesAsList(2, 2, ChooseFrom.CHOOSE_FROM),
+                service.getBestLanguagesAsList(3, 1, ChooseFrom.CHOOSE_FROM));
+
+        futures.forEach(future -> LOG.info(
+                "\nlanguages from CompletableFuture: \n{}",
+                SerArray.from(future.join(), ProgrammingLanguages.Language.class)
+                        .toYaml()));
+    }
+
     private static void demo_returningString_jacksonBeanStructure() {
         demoReturningString(new JacksonSourceResponseStructuringStrategy());
     }
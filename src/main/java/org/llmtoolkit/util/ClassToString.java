@@ -3,6 +3,7 @@ package org.llmtoolkit.util;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @SuppressWarnings({"DuplicatedCode", "SpellCheckingInspection"})
@@ -15,33 +16,153 @@ public class ClassToString {
     private static final String[] RECORD_GENERATED_METHODS = {"toString", "equals", "hashCode"};
     private static final String VALUE_METHOD = "value";
 
+    // Reflection results are computed once per class, the same models are described on every request
+    private static final ClassValue<TypeNode> TYPE_GRAPH = new ClassValue<>() {
+        @Override
+        protected TypeNode computeValue(Class<?> type) {
+            return new TypeNode(type);
+        }
+    };
+
     public static String onlyRecords(Class<?> clazz) {
         return toString(clazz, false, false);
     }
 
     public static String toString(Class<?> clazz, boolean printMethods, boolean qualifyNestedClassNames) {
+        return render(clazz, printMethods, node -> node.definition(printMethods, qualifyNestedClassNames) + "\n");
+    }
+
+    /**
+     * Text describing a class, with the estimated number of tokens it takes in a prompt
+     */
+    public record Description(String text, int estimatedTokens) {
+        static Description of(String text) {
+            return new Description(text, estimateTokens(text));
+        }
+    }
+
+    /**
+     * Describes the same records as {@link #onlyRecords}, one line per type, for prompts where the schema
+     * costs too many tokens.
+     * -
+     * Keeps the annotations, which carry the cues for the LLM, but drops modifiers, indentation,
+     * implemented interfaces and enum fields, and lists enum constants on one line.
+     * Every type is described once, however often it is referenced.
+     */
+    public static Description compactRecords(Class<?> clazz) {
+        return Description.of(render(clazz, false, node -> {
+            String definition = node.compactDefinition();
+            return definition.isEmpty() ? "" : definition + "\n";
+        }));
+    }
+
+    /**
+     * @return estimated number of tokens the text takes in a prompt, about one per 4 characters
+     */
+    public static int estimateTokens(String text) {
+        return TokenEstimate.of(text);
+    }
+
+    private static String render(Class<?> clazz, boolean printMethods, Function<TypeNode, String> definition) {
         StringBuilder sb = new StringBuilder();
         Set<Class<?>> processed = new HashSet<>();
-        Queue<Class<?>> toProcess = new LinkedList<>();
+        Queue<Class<?>> toProcess = new ArrayDeque<>();
         toProcess.add(clazz);
 
         while (!toProcess.isEmpty()) {
             Class<?> current = toProcess.poll();
             if (processed.add(current)) {
-                addDependentTypes(current, toProcess, printMethods);
-                if (current.isRecord()) {
-                    generateClassDefinition(current, sb, printMethods, qualifyNestedClassNames);
-                } else if (current.isInterface()) {
-                    generateInterfaceDefinition(current, sb, printMethods, qualifyNestedClassNames);
-                } else if (current.isEnum()) {
-                    generateEnumDefinition(current, sb, printMethods, qualifyNestedClassNames);
+                TypeNode node = TYPE_GRAPH.get(current);
+                toProcess.addAll(node.dependentTypes(printMethods));
+                sb.append(definition.apply(node));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Cached model of one class: the types its description depends on, in the order they are described,
+     * its record components with merged annotations, and its rendered definitions
+     */
+    private static final class TypeNode {
+        private final Class<?> type;
+        private List<Class<?>> dependentTypes;
+        private List<Class<?>> dependentTypesWithMethods;
+        private List<ComponentNode> components;
+        private final String[] definitions = new String[4];
+        private String compactDefinition;
+
+        TypeNode(Class<?> type) {
+            this.type = type;
+        }
+
+        synchronized List<Class<?>> dependentTypes(boolean includeMethods) {
+            if (includeMethods) {
+                if (dependentTypesWithMethods == null) {
+                    dependentTypesWithMethods = collectDependentTypes(true);
+                }
+                return dependentTypesWithMethods;
+            }
+            if (dependentTypes == null) {
+                dependentTypes = collectDependentTypes(false);
+            }
+            return dependentTypes;
+        }
+
+        private List<Class<?>> collectDependentTypes(boolean includeMethods) {
+            Queue<Class<?>> types = new ArrayDeque<>();
+            addDependentTypes(type, types, includeMethods);
+            return List.copyOf(types);
+        }
+
+        synchronized List<ComponentNode> components() {
+            if (components == null) {
+                RecordComponent[] recordComponents = type.getRecordComponents();
+                components = recordComponents == null
+                        ? List.of()
+                        : Arrays.stream(recordComponents).map(ComponentNode::of).toList();
+            }
+            return components;
+        }
+
+        synchronized String definition(boolean printMethods, boolean qualifyNestedClassNames) {
+            int index = (printMethods ? 2 : 0) + (qualifyNestedClassNames ? 1 : 0);
+            if (definitions[index] == null) {
+                StringBuilder sb = new StringBuilder();
+                if (type.isRecord()) {
+                    generateClassDefinition(type, components(), sb, printMethods, qualifyNestedClassNames);
+                } else if (type.isInterface()) {
+                    generateInterfaceDefinition(type, sb, printMethods, qualifyNestedClassNames);
+                } else if (type.isEnum()) {
+                    generateEnumDefinition(type, sb, printMethods, qualifyNestedClassNames);
                 } else {
-                    generateRegularClassDefinition(current, sb, printMethods, qualifyNestedClassNames);
+                    generateRegularClassDefinition(type, sb, printMethods, qualifyNestedClassNames);
                 }
-                sb.append("\n");
+                definitions[index] = sb.toString();
             }
+            return definitions[index];
+        }
+
+        synchronized String compactDefinition() {
+            if (compactDefinition == null) {
+                compactDefinition = generateCompactDefinition(type, components());
+            }
+            return compactDefinition;
+        }
+    }
+
+    /**
+     * @param annotations all annotations of the component, formatted and followed by a space each
+     */
+    private record ComponentNode(String annotations, Type type, String name) {
+        static ComponentNode of(RecordComponent component) {
+            StringBuilder annotations = new StringBuilder();
+            // Get ALL annotations using helper method to include field and parameter annotations
+            for (Annotation annotation : collectRecordComponentAnnotations(component)) {
+                annotations.append(formatAnnotation(annotation)).append(" ");
+            }
+            return new ComponentNode(annotations.toString(), component.getGenericType(), component.getName());
         }
-        return sb.toString();
     }
 
     private static void addDependentTypes(Class<?> clazz, Queue<Class<?>> toProcess, boolean includeMethods) {
@@ -136,19 +257,22 @@ public class ClassToString {
     }
 
     private static void generateClassDefinition(
-            Class<?> clazz, StringBuilder sb, boolean printMethods, boolean qualifyNestedClassNames) {
+            Class<?> clazz,
+            List<ComponentNode> components,
+            StringBuilder sb,
+            boolean printMethods,
+            boolean qualifyNestedClassNames) {
         // Add ALL annotations, including inherited ones
         appendAnnotations(clazz.getAnnotations(), sb);
         appendModifiers(clazz.getModifiers(), sb, false, clazz);
         sb.append("record ").append(getTypeName(clazz, qualifyNestedClassNames));
         appendTypeParameters(clazz.getTypeParameters(), sb);
 
-        RecordComponent[] components = clazz.getRecordComponents();
         sb.append("(\n");
-        if (components != null && components.length > 0) {
-            for (int i = 0; i < components.length; i++) {
-                sb.append(DOUBLE_INDENT).append(formatRecordComponent(components[i], qualifyNestedClassNames));
-                if (i < components.length - 1) {
+        if (!components.isEmpty()) {
+            for (int i = 0; i < components.size(); i++) {
+                sb.append(DOUBLE_INDENT).append(formatRecordComponent(components.get(i), qualifyNestedClassNames));
+                if (i < components.size() - 1) {
                     sb.append(",");
                 }
                 sb.append("\n");
@@ -169,21 +293,44 @@ public class ClassToString {
         sb.append(BASE_INDENT).append("}\n");
     }
 
-    private static String formatRecordComponent(RecordComponent component, boolean qualifyNestedClassNames) {
+    private static String generateCompactDefinition(Class<?> clazz, List<ComponentNode> components) {
+        if (isAnnotationInterface(clazz)) {
+            return "";
+        }
         StringBuilder sb = new StringBuilder();
-        // Get ALL annotations using helper method to include field and parameter annotations
-        Set<Annotation> allAnnotations = collectRecordComponentAnnotations(component);
-
-        for (Annotation annotation : allAnnotations) {
+        for (Annotation annotation : new LinkedHashSet<>(Arrays.asList(clazz.getAnnotations()))) {
             sb.append(formatAnnotation(annotation)).append(" ");
         }
-
-        Type type = component.getGenericType();
-        sb.append(getTypeName(type, qualifyNestedClassNames)).append(" ").append(component.getName());
+        if (clazz.isRecord()) {
+            sb.append("record ").append(clazz.getSimpleName());
+            appendTypeParameters(clazz.getTypeParameters(), sb);
+            sb.append(components.stream()
+                    .map(component -> formatRecordComponent(component, false))
+                    .collect(Collectors.joining(", ", "(", ")")));
+        } else if (clazz.isEnum()) {
+            sb.append("enum ").append(clazz.getSimpleName());
+            Object[] constants = clazz.getEnumConstants();
+            // Names, as Jackson reads them, whatever toString returns
+            sb.append(Arrays.stream(constants == null ? new Object[0] : constants)
+                    .map(constant -> ((Enum<?>) constant).name())
+                    .collect(Collectors.joining(", ", " {", "}")));
+        } else {
+            sb.append(clazz.isInterface() ? "interface " : "class ").append(clazz.getSimpleName());
+            appendTypeParameters(clazz.getTypeParameters(), sb);
+        }
         return sb.toString();
     }
 
-    private static Set<Annotation> collectRecordComponentAnnotations(RecordComponent component) {
+    private static String formatRecordComponent(ComponentNode component, boolean qualifyNestedClassNames) {
+        return component.annotations() + getTypeName(component.type(), qualifyNestedClassNames) + " "
+                + component.name();
+    }
+
+    /**
+     * Annotations of the component, its field, type, canonical constructor parameter and accessor,
+     * wherever they were declared
+     */
+    public static Set<Annotation> collectRecordComponentAnnotations(RecordComponent component) {
         Set<Annotation> allAnnotations = new LinkedHashSet<>();
         addComponentAnnotations(component, allAnnotations);
         addFieldAnnotations(component, allAnnotations);
@@ -513,7 +660,7 @@ public class ClassToString {
         Object[] constants = enumClass.getEnumConstants();
         if (constants != null && constants.length > 0) {
             for (int i = 0; i < constants.length; i++) {
-                sb.append(SINGLE_INDENT).append(constants[i].toString());
+                sb.append(SINGLE_INDENT).append(((Enum<?>) constants[i]).name());
                 if (i < constants.length - 1) {
                     sb.append(",\n");
                 } else {
@@ -0,0 +1,55 @@
+package org.llmtoolkit.util;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Marks the stable prefix of a prompt, e.g. a static template header or output instructions,
+ * so that providers supporting prompt caching can cache it instead of processing it on every call.
+ * -
+ * Everything before the last {@link #BREAKPOINT} is the prefix. Only models that understand the marker
+ * must get it, see {@link BreakpointAware}.
+ */
+@UtilityClass
+public class PromptCaching {
+    public static final String BREAKPOINT = "<|cache-breakpoint|>";
+
+    /**
+     * @param prefix the stable part of the prompt, empty if it has no breakpoint
+     * @param rest   the part of the prompt after the last breakpoint
+     */
+    public record Split(String prefix, String rest) {}
+
+    /**
+     * Implemented by chat models that remove breakpoints from prompts, e.g. those of {@code AnthropicChatModelProvider},
+     * and by wrappers that pass prompts on to other models
+     */
+    public interface BreakpointAware {
+        default boolean understandsBreakpoints() {
+            return true;
+        }
+    }
+
+    /**
+     * Whether prompts sent to the model may contain breakpoints
+     */
+    public static boolean understandsBreakpoints(Object model) {
+        return model instanceof BreakpointAware aware && aware.understandsBreakpoints();
+    }
+
+    public static boolean hasBreakpoint(String prompt) {
+        return prompt.contains(BREAKPOINT);
+    }
+
+    /**
+     * Splits the prompt at its last breakpoint, removing all breakpoints
+     */
+    public static Split split(String prompt) {
+        int at = prompt.lastIndexOf(BREAKPOINT);
+        if (at < 0) {
+            return new Split("", prompt);
+        }
+        return new Split(
+                prompt.substring(0, at).replace(BREAKPOINT, ""),
+                prompt.substring(at + BREAKPOINT.length()).replace(BREAKPOINT, ""));
+    }
+}
@@ -0,0 +1,23 @@
+package org.llmtoolkit.util;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Token counts estimated from text length, close enough for schema budgets and rate limits without a tokenizer
+ */
+@UtilityClass
+public class TokenEstimate {
+    // Rough average for English text and code across current tokenizers
+    private static final int CHARS_PER_TOKEN = 4;
+
+    public static int of(CharSequence text) {
+        return ofLength(text.length());
+    }
+
+    /**
+     * @param chars length of the text, rounded up to whole tokens
+     */
+    public static int ofLength(long chars) {
+        return (int) ((chars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN);
+    }
+}
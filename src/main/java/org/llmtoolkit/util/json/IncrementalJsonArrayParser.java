@@ -0,0 +1,158 @@
+package org.llmtoolkit.util.json;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits a JSON array arriving in chunks into the JSON text of its elements.
+ * Each element is emitted as soon as it is complete: objects and arrays on their closing bracket,
+ * scalars on the following comma or on the end of the array.
+ * -
+ * The array must begin a line, e.g. the answer or the line after a markdown fence, and its first element must
+ * look like a JSON value. Lines of prose before it are skipped, and so is anything after the array.
+ * A bracket inside prose, e.g. {@code Here [as requested]:}, does not start the array, and an answer that begins
+ * with an object instead, e.g. {@code {"tags": ["a"]}}, emits nothing, so that the caller parses it whole.
+ * Elements are not validated, they are meant to be parsed leniently by {@link JsonUtils}.
+ */
+public class IncrementalJsonArrayParser {
+    private final Consumer<String> onElement;
+    private final StringBuilder element = new StringBuilder();
+    private boolean atLineStart = true;
+    // An opening bracket was found, waiting for the first element to tell an array from prose
+    private boolean atArrayStart;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean closed;
+    private boolean truncated;
+    private int emittedCount;
+
+    public IncrementalJsonArrayParser(Consumer<String> onElement) {
+        this.onElement = onElement;
+    }
+
+    public void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length() && !closed; i++) {
+            feed(chunk.charAt(i));
+        }
+    }
+
+    private void feed(char c) {
+        if (depth == 0) {
+            findArrayStart(c);
+            return;
+        }
+
+        if (inString) {
+            element.append(c);
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+            return;
+        }
+
+        switch (c) {
+            case '"' -> {
+                inString = true;
+                element.append(c);
+            }
+            case '{', '[' -> {
+                depth++;
+                element.append(c);
+            }
+            case '}', ']' -> {
+                depth--;
+                if (depth == 0) {
+                    closed = true;
+                    emitPending();
+                } else {
+                    element.append(c);
+                    if (depth == 1) {
+                        emitPending();
+                    }
+                }
+            }
+            case ',' -> {
+                if (depth == 1) {
+                    emitPending();
+                } else {
+                    element.append(c);
+                }
+            }
+            default -> {
+                if (element.length() > 0 || !Character.isWhitespace(c)) {
+                    element.append(c);
+                }
+            }
+        }
+    }
+
+    private void findArrayStart(char c) {
+        if (atArrayStart) {
+            if (Character.isWhitespace(c)) {
+                return;
+            }
+            atArrayStart = false;
+            if (startsValue(c)) {
+                depth = 1;
+                feed(c);
+                return;
+            }
+            atLineStart = false;
+        }
+        if (c == '\n') {
+            atLineStart = true;
+        } else if (!Character.isWhitespace(c)) {
+            if (atLineStart && c == '[') {
+                atArrayStart = true;
+            } else if (atLineStart && c == '{') {
+                // A single object, whatever arrays it holds
+                closed = true;
+            }
+            atLineStart = false;
+        }
+    }
+
+    private static boolean startsValue(char c) {
+        return "{[]\"'-tfn".indexOf(c) >= 0 || Character.isDigit(c);
+    }
+
+    /**
+     * Ends the input. The trailing element of an array cut off before its closing bracket is dropped,
+     * as it may be incomplete, see {@link #isTruncated()}
+     */
+    public void finish() {
+        if (!closed) {
+            closed = true;
+            truncated = depth > 0;
+            element.setLength(0);
+        }
+    }
+
+    /**
+     * Whether the input ended inside the array
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getEmittedCount() {
+        return emittedCount;
+    }
+
+    private void emitPending() {
+        String text = element.toString().strip();
+        element.setLength(0);
+        if (!text.isEmpty()) {
+            emittedCount++;
+            onElement.accept(text);
+        }
+    }
+}
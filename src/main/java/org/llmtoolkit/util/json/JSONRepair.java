@@ -1,25 +1,29 @@
 package org.llmtoolkit.util.json;
 
-import static com.fasterxml.jackson.core.json.JsonWriteFeature.ESCAPE_NON_ASCII;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Lenient JSON parser that writes the repaired document straight to a Jackson {@link JsonGenerator}.
+ * The input is copied once into a char array, cleaned up in place and parsed by index,
+ * so repair is linear in the input size and allocates little beyond the parsed strings.
+ */
 public class JSONRepair {
-    private static final String NULL_STRING = "null";
     private static final String EMPTY_STRING = "";
-    private static final String MARKDOWN_JSON_PREFIX = "```json";
-
-    // Regex patterns
-    private static final String DUPLICATE_COMMAS_PATTERN = ",\\s*,";
-    private static final String TRAILING_OBJECT_COMMA_PATTERN = ",\\s*}";
-    private static final String TRAILING_ARRAY_COMMA_PATTERN = ",\\s*]";
+    private static final String NULL_STRING = "null";
+    private static final String ELLIPSIS = "...";
+    private static final String EMPTY_KEY_PLACEHOLDER = "empty_placeholder";
+    private static final char[] MARKDOWN_JSON_PREFIX = "```json".toCharArray();
 
     // Common characters
+    private static final int EOF = -1;
     private static final char OBJECT_START = '{';
     private static final char OBJECT_END = '}';
     private static final char ARRAY_START = '[';
@@ -30,184 +34,300 @@ public class JSONRepair {
     private static final char COLON = ':';
     private static final char ESCAPE_CHAR = '\\';
 
-    private static final Map<Character, Character> ESCAPE_CHARS = Map.of(
-            'n', '\n',
-            't', '\t',
-            'r', '\r',
-            'b', '\b',
-            'f', '\f',
-            '\\', '\\');
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     public static String repairJSON(String src) {
         if (src == null) {
             throw new IllegalArgumentException("Input cannot be null");
         }
         try {
-            String cleaned = cleanupCommas(src.trim());
-            String unwrapped = removeMarkdownWrapper(cleaned);
+            StringWriter writer = new StringWriter(src.length());
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+                repair(src, generator);
+            }
+            return writer.toString();
+        } catch (Exception e) {
+            throw new RuntimeException("Repair JSON error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the repaired JSON value to the generator without building an intermediate tree.
+     * Duplicate keys are written as they appear; Jackson binding keeps the last one.
+     */
+    public static void repair(String src, JsonGenerator generator) throws IOException {
+        if (src == null) {
+            throw new IllegalArgumentException("Input cannot be null");
+        }
+        char[] chars = src.toCharArray();
+        int start = trimStart(chars, 0, chars.length);
+        int end = trimEnd(chars, start, chars.length);
+        end = cleanupCommas(chars, start, end);
+
+        if (startsWith(chars, start, end, MARKDOWN_JSON_PREFIX)) {
+            start = trimStart(chars, start + MARKDOWN_JSON_PREFIX.length, end);
+        }
+
+        new JSONParser(chars, start, end, generator).parseJSON();
+    }
 
-            JSONParser jp = new JSONParser(unwrapped);
-            Object result = jp.parseJSON();
-            return jsonMarshal(result);
+    /**
+     * Repaired value as a token stream that can be bound with {@code codec} without printing and re-parsing the JSON
+     */
+    public static JsonParser repairToParser(String src, ObjectCodec codec) {
+        if (src == null) {
+            throw new IllegalArgumentException("Input cannot be null");
+        }
+        try {
+            TokenBuffer tokens = new TokenBuffer(codec, false);
+            repair(src, tokens);
+            return tokens.asParser(codec);
         } catch (Exception e) {
             throw new RuntimeException("Repair JSON error: " + e.getMessage(), e);
         }
     }
 
-    private static String cleanupCommas(String input) {
-        return input.replaceAll(DUPLICATE_COMMAS_PATTERN, ",")
-                .replaceAll(TRAILING_OBJECT_COMMA_PATTERN, "}")
-                .replaceAll(TRAILING_ARRAY_COMMA_PATTERN, "]");
+    /*
+     * In place, linear equivalent of the former regex passes, applied in the same order:
+     * ",\s*," -> "," then ",\s*}" -> "}" and ",\s*]" -> "]".
+     * Returns the new end of the content.
+     */
+    private static int cleanupCommas(char[] chars, int start, int end) {
+        int write = start;
+        int read = start;
+        while (read < end) {
+            char c = chars[read];
+            if (c == COMMA) {
+                int next = skipRegexWhitespace(chars, read + 1, end);
+                if (next < end && chars[next] == COMMA) {
+                    chars[write++] = COMMA;
+                    read = next + 1;
+                    continue;
+                }
+            }
+            chars[write++] = c;
+            read++;
+        }
+        end = write;
+
+        write = start;
+        read = start;
+        while (read < end) {
+            char c = chars[read];
+            if (c == COMMA) {
+                int next = skipRegexWhitespace(chars, read + 1, end);
+                if (next < end && (chars[next] == OBJECT_END || chars[next] == ARRAY_END)) {
+                    read = next;
+                    continue;
+                }
+            }
+            chars[write++] = c;
+            read++;
+        }
+        return write;
+    }
+
+    // Same set as \s in java.util.regex without UNICODE_CHARACTER_CLASS
+    private static int skipRegexWhitespace(char[] chars, int from, int end) {
+        while (from < end) {
+            char c = chars[from];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+                break;
+            }
+            from++;
+        }
+        return from;
     }
 
-    private static String removeMarkdownWrapper(String input) {
-        if (input.startsWith(MARKDOWN_JSON_PREFIX)) {
-            return input.substring(MARKDOWN_JSON_PREFIX.length()).trim();
+    // Same as String.trim()
+    private static int trimStart(char[] chars, int start, int end) {
+        while (start < end && chars[start] <= ' ') {
+            start++;
         }
-        return input;
+        return start;
     }
 
-    private static String jsonMarshal(Object obj) throws JsonProcessingException {
-        if (obj == null) {
-            return NULL_STRING;
+    private static int trimEnd(char[] chars, int start, int end) {
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
         }
-        ObjectMapper mapper = createObjectMapper();
-        return mapper.writeValueAsString(obj);
+        return end;
     }
 
-    private static ObjectMapper createObjectMapper() {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(ESCAPE_NON_ASCII.mappedFeature(), false);
-        return mapper;
+    private static boolean startsWith(char[] chars, int start, int end, char[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (chars[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private static class JSONParser {
-        private final String container;
+        // Marks what is being parsed; a strings are only recognized inside of some structure
+        private static final byte MARKER_OBJECT_KEY = 1;
+        private static final byte MARKER_OBJECT_VALUE = 2;
+        private static final byte MARKER_ARRAY = 3;
+
+        // Returned by parseValue when the value has already been written
+        private static final Object WRITTEN = new Object();
+
+        private final char[] container;
+        private final int start;
+        private final int end;
+        private final JsonGenerator generator;
+        private final StringBuilder stringBuffer = new StringBuilder();
         private int index;
-        private final List<String> marker;
+        private byte[] markers = new byte[16];
+        private int markerCount;
+
+        JSONParser(char[] container, int start, int end, JsonGenerator generator) {
+            this.container = container;
+            this.start = start;
+            this.end = end;
+            this.generator = generator;
+            this.index = start;
+        }
 
-        public JSONParser(String in) {
-            this.container = in;
-            this.index = 0;
-            this.marker = new ArrayList<>();
+        void parseJSON() throws IOException {
+            writeIfString(parseValue());
         }
 
-        public Object parseJSON() {
-            skipWhitespaces();
-            Character c = peek(0);
-            if (c == null) {
-                return EMPTY_STRING;
-            }
+        /**
+         * Writes objects, arrays, numbers, booleans and nulls directly.
+         * Strings are returned to the caller, which decides whether to keep them.
+         */
+        private Object parseValue() throws IOException {
+            while (true) {
+                skipWhitespaces();
+                int c = peek(0);
+                if (c == EOF) {
+                    return EMPTY_STRING;
+                }
 
-            boolean isInMarkers = !marker.isEmpty();
+                boolean isInMarkers = markerCount > 0;
 
-            if (c == OBJECT_START) {
-                advance();
-                return parseObject();
-            } else if (c == ARRAY_START) {
-                advance();
-                return parseArray();
-            } else if (c == OBJECT_END || c == ARRAY_END) {
-                return EMPTY_STRING;
-            } else if (isInMarkers && (isQuote(c) || Character.isLetter(c))) {
-                if (isNullStart(c)) {
-                    Object nullValue = parseNull();
-                    if (nullValue == null) {
-                        return null;
+                if (c == OBJECT_START) {
+                    advance();
+                    parseObject();
+                    return WRITTEN;
+                } else if (c == ARRAY_START) {
+                    advance();
+                    parseArray();
+                    return WRITTEN;
+                } else if (c == OBJECT_END || c == ARRAY_END) {
+                    return EMPTY_STRING;
+                } else if (isInMarkers && (isQuote(c) || Character.isLetter(c))) {
+                    if (isNullStart(c) && parseNull()) {
+                        generator.writeNull();
+                        return WRITTEN;
                     }
+                    return parseLiteral(parseString());
+                } else if (isInMarkers && (isDigit(c) || c == '-' || c == '.')) {
+                    return parseNumber();
                 }
-                String value = parseString().toString();
-                return parseLiteral(value);
-            } else if (isInMarkers && (Character.isDigit(c) || c == '-' || c == '.')) {
-                return parseNumber();
-            } else if (isInMarkers && isNullStart(c)) {
-                return parseNull();
-            }
 
-            advance();
-            return parseJSON();
+                advance();
+            }
         }
 
-        private Object parseLiteral(String value) {
+        private Object parseLiteral(String value) throws IOException {
             if (value.equalsIgnoreCase("true")) {
-                return Boolean.TRUE;
+                generator.writeBoolean(true);
+                return WRITTEN;
             } else if (value.equalsIgnoreCase("false")) {
-                return Boolean.FALSE;
-            } else if (value.equalsIgnoreCase("null")) {
-                return null;
+                generator.writeBoolean(false);
+                return WRITTEN;
+            } else if (value.equalsIgnoreCase(NULL_STRING)) {
+                generator.writeNull();
+                return WRITTEN;
             }
             return value;
         }
 
-        private boolean isQuote(char c) {
+        private void writeIfString(Object value) throws IOException {
+            if (value != WRITTEN) {
+                generator.writeString((String) value);
+            }
+        }
+
+        private boolean isQuote(int c) {
             return c == DOUBLE_QUOTE || c == SINGLE_QUOTE;
         }
 
-        private boolean isNullStart(Character c) {
+        private boolean isNullStart(int c) {
             return c == 'n' || c == 'N';
         }
 
-        private Object parseNull() {
-            if (container == null || index >= container.length()) {
-                return EMPTY_STRING;
+        private boolean isDigit(int c) {
+            return Character.isDigit(c);
+        }
+
+        private boolean parseNull() {
+            int length = NULL_STRING.length();
+            if (end - index < length) {
+                return false;
             }
-            String remaining = container.substring(index).toLowerCase();
-            if (remaining.startsWith(NULL_STRING)) {
-                index += 4;
-                return null;
+            for (int i = 0; i < length; i++) {
+                if (Character.toLowerCase(container[index + i]) != NULL_STRING.charAt(i)) {
+                    return false;
+                }
             }
-            return EMPTY_STRING;
+            index += length;
+            return true;
         }
 
-        private Map<String, Object> parseObject() {
-            Map<String, Object> result = new LinkedHashMap<>();
-            Character c = peek(0);
+        private void parseObject() throws IOException {
+            generator.writeStartObject();
+            int c = peek(0);
 
-            while (c != null && c != OBJECT_END) {
+            while (c != EOF && c != OBJECT_END) {
                 skipWhitespaces();
 
                 c = peek(0);
-                if (c != null && c == COLON) {
+                if (c == COLON) {
                     advance();
                 }
 
-                setMarker("object_key");
+                pushMarker(MARKER_OBJECT_KEY);
                 skipWhitespaces();
 
                 String key = parseObjectKey();
                 if (key.isEmpty()) {
-                    key = "empty_placeholder";
+                    key = EMPTY_KEY_PLACEHOLDER;
                 }
 
                 skipWhitespaces();
                 c = peek(0);
 
-                if (c != null && c == OBJECT_END) {
-                    result.put(key, EMPTY_STRING);
+                if (c == OBJECT_END) {
+                    generator.writeStringField(key, EMPTY_STRING);
                     continue;
                 }
 
-                if (c != null && c == COLON) {
+                if (c == COLON) {
                     advance();
                 }
 
                 skipWhitespaces();
                 c = peek(0);
 
-                if (c == null) {
-                    result.put(key, EMPTY_STRING);
+                if (c == EOF) {
+                    generator.writeStringField(key, EMPTY_STRING);
                     break;
                 }
 
-                resetMarker();
-                setMarker("object_value");
-                Object value = parseJSON();
-
-                resetMarker();
-                result.put(key, value);
+                popMarker();
+                pushMarker(MARKER_OBJECT_VALUE);
+                generator.writeFieldName(key);
+                writeIfString(parseValue());
+                popMarker();
 
                 c = peek(0);
-                if (c != null && (c == COMMA || isQuote(c))) {
+                if (c == COMMA || isQuote(c)) {
                     advance();
                 }
 
@@ -215,23 +335,22 @@ public class JSONRepair {
                 c = peek(0);
             }
 
-            if (c != null) {
+            if (c != EOF) {
                 advance();
             }
-            return result;
+            generator.writeEndObject();
         }
 
         private String parseObjectKey() {
             String key = EMPTY_STRING;
-            Character c = peek(0);
+            int c = peek(0);
 
-            while (key.isEmpty() && c != null) {
+            while (key.isEmpty() && c != EOF) {
                 int currentIndex = index;
-                Object parsedString = parseString();
-                key = parsedString.toString();
+                key = parseString();
 
                 c = peek(0);
-                if (key.isEmpty() && c != null && (c == COLON || c == COMMA || c == OBJECT_END)) {
+                if (key.isEmpty() && c != EOF && (c == COLON || c == COMMA || c == OBJECT_END)) {
                     break;
                 } else if (key.isEmpty() && index == currentIndex) {
                     advance();
@@ -241,63 +360,62 @@ public class JSONRepair {
             return key;
         }
 
-        private List<Object> parseArray() {
-            List<Object> result = new ArrayList<>();
-            Character c = peek(0);
-            setMarker("array");
+        private void parseArray() throws IOException {
+            generator.writeStartArray();
+            int c = peek(0);
+            pushMarker(MARKER_ARRAY);
 
-            while (c != null && c != ARRAY_END) {
+            while (c != EOF && c != ARRAY_END) {
                 skipWhitespaces();
-                Object value = parseJSON();
-
-                if (value == null) {
-                    result.add(null);
-                } else if (!value.equals(EMPTY_STRING)) {
-                    Character prevC = peek(-1);
-                    if (!value.equals("...") || prevC == null || prevC != '.') {
-                        result.add(value);
+                Object value = parseValue();
+
+                if (value != WRITTEN && !value.equals(EMPTY_STRING)) {
+                    int prevC = peek(-1);
+                    if (!value.equals(ELLIPSIS) || prevC != '.') {
+                        generator.writeString((String) value);
                     }
                 }
 
                 c = peek(0);
-                while (c != null && (Character.isWhitespace(c) || c == COMMA)) {
+                while (c != EOF && (Character.isWhitespace(c) || c == COMMA)) {
                     advance();
                     c = peek(0);
                 }
 
-                if (getMarker() != null && getMarker().equals("object_value") && c != null && c == OBJECT_END) {
+                // An object closing before the array does: the array was left unclosed
+                if (c == OBJECT_END) {
                     break;
                 }
             }
 
             c = peek(0);
-            if (c != null && c != ARRAY_END) {
+            if (c != EOF && c != ARRAY_END) {
                 index--;
             }
 
             advance();
-            resetMarker();
-            return result;
+            popMarker();
+            generator.writeEndArray();
         }
 
-        private Object parseString() {
-            StringBuilder result = new StringBuilder();
-            Character c = peek(0);
+        private String parseString() {
+            StringBuilder result = stringBuffer;
+            result.setLength(0);
+            int c = peek(0);
 
-            if (c == null) {
+            if (c == EOF) {
                 return EMPTY_STRING;
             }
 
             boolean isQuoted = isQuote(c);
-            char quote = isQuoted ? c : DOUBLE_QUOTE;
+            int quote = isQuoted ? c : DOUBLE_QUOTE;
 
             if (isQuoted) {
                 advance();
             }
 
-            while ((c = peek(0)) != null) {
-                Character prev = peek(-1);
-                if (isQuoted && c == quote && (prev == null || prev != ESCAPE_CHAR)) {
+            while ((c = peek(0)) != EOF) {
+                if (isQuoted && c == quote && peek(-1) != ESCAPE_CHAR) {
                     advance();
                     break;
                 }
@@ -310,69 +428,83 @@ public class JSONRepair {
 
                 if (c == ESCAPE_CHAR) {
                     advance();
-                    Character next = peek(0);
-                    if (next != null) {
-                        handleEscapeSequence(result, next);
+                    int next = peek(0);
+                    if (next != EOF) {
+                        handleEscapeSequence(result, (char) next);
                     }
                 } else {
-                    result.append(c);
+                    result.append((char) c);
                     advance();
                 }
             }
 
-            return result.toString();
+            return result.length() == 0 ? EMPTY_STRING : result.toString();
         }
 
         private void handleEscapeSequence(StringBuilder result, char next) {
-            if (ESCAPE_CHARS.containsKey(next)) {
-                result.append(ESCAPE_CHARS.get(next));
-            } else if (next == 'u') {
-                result.append("\\u");
-                advance();
-                for (int i = 0; i < 4; i++) {
-                    Character hex = peek(0);
-                    if (hex != null) {
-                        result.append(hex);
-                        advance();
+            switch (next) {
+                case 'n' -> result.append('\n');
+                case 't' -> result.append('\t');
+                case 'r' -> result.append('\r');
+                case 'b' -> result.append('\b');
+                case 'f' -> result.append('\f');
+                case 'u' -> {
+                    result.append("\\u");
+                    advance();
+                    for (int i = 0; i < 4; i++) {
+                        int hex = peek(0);
+                        if (hex != EOF) {
+                            result.append((char) hex);
+                            advance();
+                        }
                     }
                 }
-            } else {
-                result.append(next);
+                default -> result.append(next);
             }
             advance();
         }
 
-        private Object parseNumber() {
-            StringBuilder result = new StringBuilder();
-            Character c;
+        private Object parseNumber() throws IOException {
+            int numberStart = index;
+            boolean isDecimal = false;
+            int c;
 
-            while ((c = peek(0)) != null) {
-                if (Character.isDigit(c) || c == '-' || c == '.' || c == 'e' || c == 'E' || c == '+') {
-                    result.append(c);
+            while ((c = peek(0)) != EOF) {
+                if (isDigit(c) || c == '-' || c == '+') {
+                    advance();
+                } else if (c == '.' || c == 'e' || c == 'E') {
+                    isDecimal = true;
                     advance();
                 } else {
                     break;
                 }
             }
 
-            String numStr = result.toString();
             try {
-                if (numStr.contains(".") || numStr.toLowerCase().contains("e")) {
-                    return Double.parseDouble(numStr);
+                if (isDecimal) {
+                    generator.writeNumber(
+                            Double.parseDouble(String.valueOf(container, numberStart, index - numberStart)));
                 } else {
-                    return Long.parseLong(numStr);
+                    long value = Long.parseLong(CharBuffer.wrap(container), numberStart, index, 10);
+                    // Same node type as parsing the printed number: int when it fits
+                    if (value == (int) value) {
+                        generator.writeNumber((int) value);
+                    } else {
+                        generator.writeNumber(value);
+                    }
                 }
+                return WRITTEN;
             } catch (NumberFormatException e) {
-                return numStr;
+                return String.valueOf(container, numberStart, index - numberStart);
             }
         }
 
-        private Character peek(int offset) {
+        private int peek(int offset) {
             int targetIndex = index + offset;
-            if (container == null || targetIndex < 0 || targetIndex >= container.length()) {
-                return null;
+            if (targetIndex < start || targetIndex >= end) {
+                return EOF;
             }
-            return container.charAt(targetIndex);
+            return container[targetIndex];
         }
 
         private void advance() {
@@ -380,27 +512,22 @@ public class JSONRepair {
         }
 
         private void skipWhitespaces() {
-            Character c = peek(0);
-            while (c != null && Character.isWhitespace(c)) {
-                advance();
-                c = peek(0);
+            while (index < end && Character.isWhitespace(container[index])) {
+                index++;
             }
         }
 
-        private void setMarker(String in) {
-            if (in != null && !in.isEmpty()) {
-                marker.add(in);
+        private void pushMarker(byte marker) {
+            if (markerCount == markers.length) {
+                markers = Arrays.copyOf(markers, markerCount * 2);
             }
+            markers[markerCount++] = marker;
         }
 
-        private void resetMarker() {
-            if (!marker.isEmpty()) {
-                marker.remove(marker.size() - 1);
+        private void popMarker() {
+            if (markerCount > 0) {
+                markerCount--;
             }
         }
-
-        private String getMarker() {
-            return !marker.isEmpty() ? marker.get(marker.size() - 1) : null;
-        }
     }
 }
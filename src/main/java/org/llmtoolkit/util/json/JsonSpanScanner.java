@@ -0,0 +1,108 @@
+package org.llmtoolkit.util.json;
+
+/**
+ * Locates JSON in model answers in a single pass over the text.
+ * Results are offsets into the original text, so callers copy at most the part they keep.
+ */
+public class JsonSpanScanner {
+    private static final String JSON_FENCE = "```json";
+    private static final String FENCE = "```";
+
+    /**
+     * Half-open range {@code [start, end)} of the text
+     */
+    public record Span(int start, int end) {
+        public String of(String text) {
+            return text.substring(start, end);
+        }
+    }
+
+    /**
+     * Content of the first closed ```json block without surrounding whitespace, or null if there is none
+     */
+    public static Span findFencedJsonBlock(String text) {
+        int fence = text.indexOf(JSON_FENCE);
+        if (fence < 0) {
+            return null;
+        }
+        int start = fence + JSON_FENCE.length();
+        while (start < text.length() && isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        int closingFence = text.indexOf(FENCE, start);
+        if (closingFence < 0) {
+            return null;
+        }
+        int end = closingFence;
+        while (end > start && isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return new Span(start, end);
+    }
+
+    /**
+     * Outermost JSON object or array in {@code [from, to)}, starting at whichever of '{' and '[' comes first.
+     * Brackets inside strings are ignored. If the value is never closed, e.g. a truncated answer,
+     * the span runs to the last closing bracket of the same kind and is left to {@link JSONRepair}.
+     * Without any closing bracket the whole range is returned, trimmed.
+     */
+    public static Span findJsonSpan(String text, int from, int to) {
+        int start = from;
+        while (start < to && text.charAt(start) != '{' && text.charAt(start) != '[') {
+            start++;
+        }
+        if (start == to) {
+            return trim(text, from, to);
+        }
+
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = start; i < to; i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> inString = true;
+                case '{', '[' -> depth++;
+                case '}', ']' -> {
+                    if (--depth == 0) {
+                        return new Span(start, i + 1);
+                    }
+                }
+                default -> {}
+            }
+        }
+
+        char closer = text.charAt(start) == '{' ? '}' : ']';
+        int lastCloser = text.lastIndexOf(closer, to - 1);
+        if (lastCloser < start) {
+            return trim(text, from, to);
+        }
+        return new Span(start, lastCloser + 1);
+    }
+
+    // Same as String.trim()
+    private static Span trim(String text, int from, int to) {
+        while (from < to && text.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && text.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        return new Span(from, to);
+    }
+
+    // Same set as \s in java.util.regex
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
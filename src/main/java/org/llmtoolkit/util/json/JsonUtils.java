@@ -3,16 +3,23 @@ package org.llmtoolkit.util.json;
 import static com.fasterxml.jackson.core.json.JsonReadFeature.ALLOW_TRAILING_COMMA;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.llmtoolkit.util.json.JsonSpanScanner.Span;
 import org.springframework.util.StringUtils;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
@@ -28,54 +35,191 @@ public class JsonUtils {
             .enable(SerializationFeature.INDENT_OUTPUT)
             .setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
+    private static volatile double yamlVerificationRate = 1;
+
+    private static final String FENCE = "```";
+    private static final Object NOT_PARSED = new Object();
+
+    private static final LongAdder YAML_PARSED = new LongAdder();
+    private static final LongAdder JSON_PARSED = new LongAdder();
+    private static final LongAdder REPAIR_PARSED = new LongAdder();
+    private static final LongAdder FALLBACKS = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+
+    /**
+     * How often each parse path succeeded since startup.
+     * {@code fallbacks} counts inputs whose detected format failed to parse, so that another parser had to be tried.
+     */
+    public record ParseStats(long yaml, long json, long repaired, long fallbacks, long failed) {}
+
+    enum Format {
+        JSON,
+        YAML
+    }
+
     public static <T> T parseJsonOrYamlObject(String inputString, Class<T> clazz) {
+        try {
+            return parseJsonOrYaml(inputString, JSON_OBJECT_MAPPER.constructType(clazz));
+        } catch (Exception e) {
+            throw new RuntimeException(
+                    "Cannot parse json to class " + clazz.getName() + " json: \n" + trimJson(inputString), e);
+        }
+    }
 
-        // First attempt: Parse as YAML
+    public static <T> List<T> parseJsonOrYamlArray(String inputString, Class<T> clazz) {
         try {
-            return YAML_OBJECT_MAPPER.readValue(inputString, clazz);
-        } catch (JsonProcessingException ignored) {
+            return parseJsonOrYaml(
+                    inputString, JSON_OBJECT_MAPPER.getTypeFactory().constructCollectionType(List.class, clazz));
+        } catch (Exception e) {
+            throw new RuntimeException(
+                    "Cannot parse json array to class " + clazz.getName() + " input: \n" + inputString, e);
+        }
+    }
+
+    /*
+     * Tries the detected format first, then the other one, then repairs the JSON.
+     * The order used to be fixed YAML first, which made fenced JSON answers, the common case, pay for a failed parse.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T parseJsonOrYaml(String inputString, JavaType type) throws Exception {
+        Format format = detectFormat(inputString);
+
+        if (format == Format.YAML) {
+            Object value = tryParse(YAML_OBJECT_MAPPER, yamlBlockIfFenced(inputString), type, YAML_PARSED);
+            if (value != NOT_PARSED) {
+                return (T) value;
+            }
+            FALLBACKS.increment();
         }
 
-        // Second attempt: Parse JSON
         String json = trimJson(inputString);
-        try {
-            return JSON_OBJECT_MAPPER.readValue(json, clazz);
-        } catch (JsonProcessingException ignored) {
+        Object value = tryParse(JSON_OBJECT_MAPPER, json, type, JSON_PARSED);
+        if (value != NOT_PARSED) {
+            return (T) value;
         }
 
-        // Third attempt: Repair and parse JSON
-        try {
-            return JSON_OBJECT_MAPPER.readValue(JSONRepair.repairJSON(json), clazz);
+        if (format == Format.JSON) {
+            FALLBACKS.increment();
+            value = tryParse(YAML_OBJECT_MAPPER, yamlBlockIfFenced(inputString), type, YAML_PARSED);
+            if (value != NOT_PARSED) {
+                return (T) value;
+            }
+        }
+
+        try (JsonParser repaired = JSONRepair.repairToParser(json, JSON_OBJECT_MAPPER)) {
+            T result = JSON_OBJECT_MAPPER.readValue(repaired, type);
+            REPAIR_PARSED.increment();
+            return result;
         } catch (Exception e) {
-            throw new RuntimeException("Cannot parse json to class " + clazz.getName() + " json: \n" + json, e);
+            FAILED.increment();
+            throw e;
         }
     }
 
-    public static <T> List<T> parseJsonOrYamlArray(String inputString, Class<T> clazz) {
-        // First attempt: Parse as YAML
+    private static Object tryParse(ObjectMapper mapper, String input, JavaType type, LongAdder counter) {
         try {
-            return YAML_OBJECT_MAPPER.readValue(
-                    inputString, YAML_OBJECT_MAPPER.getTypeFactory().constructCollectionType(List.class, clazz));
+            Object value = mapper.readValue(input, type);
+            counter.increment();
+            return value;
         } catch (JsonProcessingException ignored) {
+            return NOT_PARSED;
         }
+    }
 
-        // Second attempt: Parse JSON
-        String json = trimJson(inputString);
-        try {
-            return JSON_OBJECT_MAPPER.readValue(
-                    json, JSON_OBJECT_MAPPER.getTypeFactory().constructCollectionType(List.class, clazz));
-        } catch (JsonProcessingException ignored) {
+    public static ParseStats getParseStats() {
+        return new ParseStats(YAML_PARSED.sum(), JSON_PARSED.sum(), REPAIR_PARSED.sum(), FALLBACKS.sum(), FAILED.sum());
+    }
+
+    public static void resetParseStats() {
+        YAML_PARSED.reset();
+        JSON_PARSED.reset();
+        REPAIR_PARSED.reset();
+        FALLBACKS.reset();
+        FAILED.reset();
+    }
+
+    /**
+     * Cheap guess of the answer format from the fence language, the first non-blank character and {@code key:} lines
+     */
+    static Format detectFormat(String input) {
+        int contentStart = 0;
+        int fence = input.indexOf(FENCE);
+        if (fence >= 0) {
+            int languageStart = fence + FENCE.length();
+            int lineEnd = lineEnd(input, languageStart);
+            String language = input.substring(languageStart, lineEnd).strip();
+            if (language.equalsIgnoreCase("json")) {
+                return Format.JSON;
+            }
+            if (language.equalsIgnoreCase("yaml") || language.equalsIgnoreCase("yml")) {
+                return Format.YAML;
+            }
+            contentStart = lineEnd;
         }
 
-        // Third attempt: Repair and parse JSON
-        try {
-            return JSON_OBJECT_MAPPER.readValue(
-                    JSONRepair.repairJSON(json),
-                    JSON_OBJECT_MAPPER.getTypeFactory().constructCollectionType(List.class, clazz));
-        } catch (Exception e) {
-            throw new RuntimeException(
-                    "Cannot parse json array to class " + clazz.getName() + " input: \n" + inputString, e);
+        int first = contentStart;
+        while (first < input.length() && Character.isWhitespace(input.charAt(first))) {
+            first++;
+        }
+        if (first == input.length()) {
+            return Format.YAML;
+        }
+        char c = input.charAt(first);
+        if (c == '{' || c == '[') {
+            return Format.JSON;
+        }
+        if (hasYamlKeyLine(input, first)) {
+            return Format.YAML;
         }
+        return input.indexOf('{', first) >= 0 || input.indexOf('[', first) >= 0 ? Format.JSON : Format.YAML;
+    }
+
+    // A line of the form "key: value", "key:" or "- key: value"
+    private static boolean hasYamlKeyLine(String input, int from) {
+        int lineStart = from;
+        while (lineStart < input.length()) {
+            int lineEnd = lineEnd(input, lineStart);
+            int i = lineStart;
+            while (i < lineEnd && input.charAt(i) == ' ') {
+                i++;
+            }
+            if (i + 1 < lineEnd && input.charAt(i) == '-' && input.charAt(i + 1) == ' ') {
+                i += 2;
+            }
+            int keyStart = i;
+            while (i < lineEnd && isYamlKeyChar(input.charAt(i))) {
+                i++;
+            }
+            if (i > keyStart
+                    && i < lineEnd
+                    && input.charAt(i) == ':'
+                    && (i + 1 == lineEnd || input.charAt(i + 1) == ' ')) {
+                return true;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return false;
+    }
+
+    private static boolean isYamlKeyChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+
+    private static int lineEnd(String input, int from) {
+        int end = input.indexOf('\n', from);
+        return end == -1 ? input.length() : end;
+    }
+
+    // YAML cannot start with a backtick, so a fenced answer is parsed from its fence content
+    private static String yamlBlockIfFenced(String input) {
+        int fence = input.indexOf(FENCE);
+        if (fence < 0) {
+            return input;
+        }
+        int contentStart = lineEnd(input, fence + FENCE.length());
+        int closingFence = input.indexOf(FENCE, contentStart);
+        return input.substring(
+                Math.min(contentStart + 1, input.length()), closingFence < 0 ? input.length() : closingFence);
     }
 
     public static <T> String formatJsonObject(T object) {
@@ -96,78 +240,137 @@ public class JsonUtils {
 
     public static String trimJson(String input) {
         if (!StringUtils.hasText(input)) return "";
-        input = getMarkdownBlockIfPresent(input);
-        return extractJson(input);
+        Span block = JsonSpanScanner.findFencedJsonBlock(input);
+        Span json = block == null
+                ? JsonSpanScanner.findJsonSpan(input, 0, input.length())
+                : JsonSpanScanner.findJsonSpan(input, block.start(), block.end());
+        return json.of(input);
     }
 
-    private static String getMarkdownBlockIfPresent(String input) {
-        Pattern markdownPattern = Pattern.compile("```json\\s*(.*?)\\s*```", Pattern.DOTALL);
-        Matcher markdownMatcher = markdownPattern.matcher(input);
-
-        if (markdownMatcher.find()) {
-            return markdownMatcher.group(1);
+    /*
+     * Much better output than direct YAML printing
+     * Honors width parameter
+     */
+    static String convertJsonToYaml(String json, int width) {
+        try {
+            return dumpYaml(JSON_OBJECT_MAPPER.readTree(json), width);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new RuntimeException(e);
         }
-        return input;
     }
 
-    private static String extractJson(String input) {
-        String arrayPattern = "\\[.*](?!.*])";
-        String objectPattern = "\\{.*}(?!.*})";
+    /**
+     * Dumps the object as YAML, going through a JSON tree, so that the YAML has the same content as the JSON
+     * of {@link #formatJsonObject}. Some of the dumps are parsed back and compared with the tree,
+     * see {@link #setYamlVerificationRate}.
+     */
+    static String toYaml(Object value, int width) {
+        JsonNode tree = JSON_OBJECT_MAPPER.valueToTree(value);
+        String yaml = dumpYaml(tree, width);
+        if (yamlVerificationRate >= 1 || ThreadLocalRandom.current().nextDouble() < yamlVerificationRate) {
+            verifyYaml(yaml, tree);
+        }
+        return yaml;
+    }
 
-        int objectStart = input.indexOf('{');
-        int arrayStart = input.indexOf('[');
+    /**
+     * Sets the fraction of YAML dumps that are parsed back and compared with what was dumped, 1 by default.
+     * A mismatch means the YAML would be read back as different data and fails the dump.
+     */
+    public static void setYamlVerificationRate(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Rate must be between 0 and 1: " + rate);
+        }
+        yamlVerificationRate = rate;
+    }
 
-        if (objectStart == -1 && arrayStart == -1) {
-            return input.trim();
+    private static String dumpYaml(JsonNode tree, int width) {
+        if (!tree.isContainerNode()) {
+            throw new IllegalArgumentException("Input JSON must be an object or array");
         }
+        // A Yaml is not thread-safe, and building one is cheap next to dumping and verifying
+        return new Yaml(dumperOptions(width)).dump(toPlainValue(tree));
+    }
 
-        Pattern pattern;
-        if (objectStart == -1) pattern = Pattern.compile(arrayPattern, Pattern.DOTALL);
-        else if (arrayStart == -1) pattern = Pattern.compile(objectPattern, Pattern.DOTALL);
-        else
-            pattern = objectStart < arrayStart
-                    ? Pattern.compile(objectPattern, Pattern.DOTALL)
-                    : Pattern.compile(arrayPattern, Pattern.DOTALL);
+    private static DumperOptions dumperOptions(int width) {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setDefaultScalarStyle(DumperOptions.ScalarStyle.PLAIN);
+        options.setIndent(4);
+        options.setWidth(width);
+        return options;
+    }
 
-        Matcher matcher = pattern.matcher(input);
-        String longest = "";
-        while (matcher.find()) {
-            String match = matcher.group();
-            if (match.length() > longest.length()) {
-                longest = match;
+    // Same values as reading the JSON text into maps and lists, numbers as Integer, Long, BigInteger or Double
+    private static Object toPlainValue(JsonNode node) {
+        if (node.isObject()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonNode> field : node.properties()) {
+                map.put(field.getKey(), toPlainValue(field.getValue()));
+            }
+            return map;
+        } else if (node.isArray()) {
+            List<Object> list = new ArrayList<>(node.size());
+            for (JsonNode element : node) {
+                list.add(toPlainValue(element));
+            }
+            return list;
+        } else if (node.isNull() || node.isMissingNode()) {
+            return null;
+        } else if (node.isBoolean()) {
+            return node.booleanValue();
+        } else if (node.isIntegralNumber()) {
+            if (node.canConvertToInt()) {
+                return node.intValue();
             }
+            return node.canConvertToLong() ? node.longValue() : node.bigIntegerValue();
+        } else if (node.isNumber()) {
+            return Double.parseDouble(node.asText());
         }
-        return longest.isEmpty() ? input.trim() : longest.trim();
+        return node.asText();
     }
 
-    /*
-     * Much better output than direct YAML printing
-     * Honors width parameter
-     */
-    static String convertJsonToYaml(String json, int width) {
-
-        try {
-            ObjectMapper jsonMapper = new ObjectMapper();
-            JsonNode jsonNode = jsonMapper.readTree(json);
-
-            DumperOptions options = new DumperOptions();
-            options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-            options.setDefaultScalarStyle(DumperOptions.ScalarStyle.PLAIN);
-            options.setIndent(4);
-            options.setWidth(width);
-
-            if (jsonNode.isObject()) {
-                var map = jsonMapper.convertValue(jsonNode, LinkedHashMap.class);
-                return new Yaml(options).dump(map);
-            } else if (jsonNode.isArray()) {
-                var list = jsonMapper.convertValue(jsonNode, List.class);
-                return new Yaml(options).dump(list);
-            } else {
-                throw new IllegalArgumentException("Input JSON must be an object or array");
+    // Compares the token streams of the YAML and the tree, numbers by value
+    private static void verifyYaml(String yaml, JsonNode tree) {
+        try (JsonParser expected = JSON_OBJECT_MAPPER.treeAsTokens(tree);
+                JsonParser actual = YAML_OBJECT_MAPPER.createParser(yaml)) {
+            JsonToken token;
+            while ((token = expected.nextToken()) != null) {
+                JsonToken actualToken = actual.nextToken();
+                if (!isSameToken(token, expected, actualToken, actual)) {
+                    throw new RuntimeException("YAML does not read back as the dumped data at "
+                            + expected.currentName() + ": expected " + token + " " + expected.getText()
+                            + ", got " + actualToken + " " + (actualToken == null ? "" : actual.getText())
+                            + "\nYAML:\n" + yaml);
+                }
             }
-        } catch (JsonProcessingException | IllegalArgumentException e) {
-            throw new RuntimeException(e);
+            if (actual.nextToken() != null) {
+                throw new RuntimeException("YAML has more content than the dumped data:\n" + yaml);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("YAML cannot be read back: " + e.getMessage() + "\nYAML:\n" + yaml, e);
+        }
+    }
+
+    private static boolean isSameToken(JsonToken token, JsonParser expected, JsonToken actualToken, JsonParser actual)
+            throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT && actualToken == JsonToken.VALUE_NUMBER_INT) {
+            return expected.getBigIntegerValue().equals(actual.getBigIntegerValue());
+        }
+        if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+            // Floats are dumped as the double of their text, e.g. 1.1 for 1.1f
+            return actualToken == JsonToken.VALUE_NUMBER_FLOAT
+                    && Double.compare(Double.parseDouble(expected.getText()), actual.getDoubleValue()) == 0;
+        }
+        // Binary values are dumped as their base64 text
+        JsonToken expectedToken = token == JsonToken.VALUE_EMBEDDED_OBJECT ? JsonToken.VALUE_STRING : token;
+        if (expectedToken != actualToken) {
+            return false;
         }
+        return switch (expectedToken) {
+            case FIELD_NAME, VALUE_STRING -> expected.getText().equals(actual.getText());
+            default -> true;
+        };
     }
 
     @SuppressWarnings("unused")
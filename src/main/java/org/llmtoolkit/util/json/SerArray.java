@@ -6,8 +6,8 @@ import java.util.List;
 
 /**
  * Serializes arrays to/from JSON and YAML with format validation.
- * Ensures round-trip consistency by verifying that re-parsing the serialized output
- * produces identical results.
+ * Ensures round-trip consistency by verifying that the YAML output reads back
+ * as the same data, for all or a sample of the outputs.
  *
  * @param <T> type of elements in the array
  */
@@ -44,11 +44,10 @@ public class SerArray<T> {
         return toYaml(DEFAULT_YAML_WIDTH);
     }
 
+    /**
+     * @see JsonUtils#setYamlVerificationRate
+     */
     public String toYaml(int width) {
-        String serializedJson = toJson();
-        String yaml = JsonUtils.convertJsonToYaml(serializedJson, width);
-        String reSerializedJson = SerArray.from(yaml, clazz).toJson();
-        if (!serializedJson.equals(reSerializedJson)) throw new RuntimeException();
-        return yaml;
+        return JsonUtils.toYaml(array, width);
     }
 }
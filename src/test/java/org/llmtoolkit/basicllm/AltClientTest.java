@@ -0,0 +1,232 @@
+package org.llmtoolkit.basicllm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.llmtoolkit.core.RetryPolicy;
+
+public class AltClientTest {
+
+    private HttpServer server;
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private final AtomicReference<String> responseBody = new AtomicReference<>();
+    private volatile int responseStatus = 200;
+    private final CountDownLatch stall = new CountDownLatch(1);
+    private volatile boolean stalling;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/chat/completions", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        stall.countDown();
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        if (stalling) {
+            try {
+                stall.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        boolean isStream = requestBodies.get(requestBodies.size() - 1).contains("\"stream\":true");
+        exchange.getResponseHeaders().add("Content-Type", isStream ? "text/event-stream" : "application/json");
+        exchange.sendResponseHeaders(responseStatus, 0);
+        try (OutputStream body = exchange.getResponseBody()) {
+            for (String chunk : responseBody.get().split("(?<=\n\n)")) {
+                body.write(chunk.getBytes(StandardCharsets.UTF_8));
+                body.flush();
+            }
+        }
+    }
+
+    private AltClient client() {
+        return AltClient.builder()
+                .baseUrl("http://localhost:" + server.getAddress().getPort() + "/v1/")
+                .apiKey("key")
+                .maxConnections(2)
+                .build();
+    }
+
+    private static String sse(String... tokens) {
+        StringBuilder events = new StringBuilder(": keep-alive\n\n")
+                .append("data: {\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":null}}]}\n\n");
+        for (String token : tokens) {
+            events.append("data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"")
+                    .append(token)
+                    .append("\"}}]}\n\n");
+        }
+        return events.append("data: {\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}\n\n")
+                .append("data: [DONE]\n\n")
+                .toString();
+    }
+
+    @Test
+    void testAnswer() {
+        responseBody.set("{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"Hello\"}}]}");
+
+        assertEquals("Hello", client().answer("Hi", "model", 0.5, null, 100, null, null));
+        assertTrue(requestBodies.get(0).contains("\"stream\":false"));
+        assertTrue(requestBodies.get(0).contains("\"content\":\"Hi\""));
+    }
+
+    @Test
+    void testAnswerWithUsageSkipsOtherFields() {
+        responseBody.set(
+                """
+                {"id": "x", "object": "chat.completion", "system_fingerprint": null,
+                 "choices": [
+                   {"index": 0, "logprobs": {"content": [{"token": "a", "top_logprobs": []}]},
+                    "message": {"role": "assistant", "reasoning_content": "{[", "content": "Hello \\"there\\""},
+                    "finish_reason": "stop"},
+                   {"index": 1, "message": {"role": "assistant", "content": "Second"}}
+                 ],
+                 "usage": {"prompt_tokens": 10, "completion_tokens": 3, "total_tokens": 13,
+                           "prompt_tokens_details": {"cached_tokens": 0}}}
+                """);
+
+        AltClient.Answer answer = client().answerWithUsage("Hi", "model", null, null, null, null, null);
+
+        assertEquals("Hello \"there\"", answer.content());
+        assertEquals(new AltClient.Usage(10, 3, 13), answer.usage());
+    }
+
+    @Test
+    void testRequestBody() throws IOException {
+        responseBody.set("{\"choices\":[{\"message\":{\"content\":\"ok\"}}]}");
+        String prompt = "Say \"hi\"\n\tin \u00e9t\u00e9 \ud83d\ude00 \\ </script>";
+        AltClient client = client();
+
+        client.answer(prompt, "model", 0.5, null, 100, null, 30);
+        client.answer("Other", "model", 0.5, null, 100, null, 30);
+
+        JsonNode first = new ObjectMapper().readTree(requestBodies.get(0));
+        assertEquals(
+                List.of("model", "timeout", "temperature", "max_tokens", "stream", "messages"),
+                ImmutableList.copyOf(first.fieldNames()));
+        assertEquals(0.5, first.get("temperature").asDouble());
+        assertEquals(prompt, first.get("messages").get(0).get("content").asText());
+        assertEquals("user", first.get("messages").get(0).get("role").asText());
+        // The second request reuses the cached prefix
+        JsonNode second = new ObjectMapper().readTree(requestBodies.get(1));
+        assertEquals("Other", second.get("messages").get(0).get("content").asText());
+        assertEquals(100, second.get("max_tokens").asInt());
+    }
+
+    @Test
+    void testUnexpectedResponse() {
+        responseBody.set("{\"choices\": []}");
+        RuntimeException missing = assertThrows(
+                RuntimeException.class, () -> client().answer("Hi", "model", null, null, null, null, null));
+        assertTrue(missing.getMessage().contains("Unexpected response format"));
+
+        responseBody.set("{\"error\": {\"message\": \"overloaded\"}}");
+        RuntimeException error = assertThrows(
+                RuntimeException.class, () -> client().answer("Hi", "model", null, null, null, null, null));
+        assertTrue(error.getMessage().contains("overloaded"));
+    }
+
+    @Test
+    void testErrorStatus() {
+        responseStatus = 429;
+        responseBody.set("{\"error\":\"slow down\"}");
+
+        RuntimeException e = assertThrows(
+                RuntimeException.class, () -> client().answer("Hi", "model", null, null, null, null, null));
+        assertTrue(e.getMessage().contains("429"));
+        assertTrue(e.getMessage().contains("slow down"));
+
+        CompletionException streamed = assertThrows(CompletionException.class, () -> client().streamAnswer(
+                        "Hi", "model", null, null, null, null, null, token -> {})
+                .join());
+        assertTrue(streamed.getCause().getMessage().contains("429"));
+    }
+
+    @Test
+    void testTimeoutBoundsTheCall() {
+        stalling = true;
+        responseBody.set("{\"choices\":[{\"message\":{\"content\":\"late\"}}]}");
+        long start = System.nanoTime();
+
+        RuntimeException e =
+                assertThrows(RuntimeException.class, () -> client().answer("Hi", "model", null, null, null, null, 1));
+        assertTrue(RetryPolicy.isTransient(e));
+        CompletionException streamed = assertThrows(CompletionException.class, () -> client().streamAnswer(
+                        "Hi", "model", null, null, null, null, 1, token -> {})
+                .join());
+        assertInstanceOf(HttpTimeoutException.class, streamed.getCause());
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    void testStreamAnswer() {
+        responseBody.set(sse("Hel", "lo", " world"));
+        List<String> tokens = new CopyOnWriteArrayList<>();
+
+        String answer = client().streamAnswer("Hi", "model", null, null, null, null, null, tokens::add)
+                .join();
+
+        assertEquals("Hello world", answer);
+        assertEquals(List.of("Hel", "lo", " world"), tokens);
+        assertTrue(requestBodies.get(0).contains("\"stream\":true"));
+    }
+
+    @Test
+    void testPublishAnswer() throws InterruptedException {
+        responseBody.set(sse("a", "b", "c"));
+        List<String> tokens = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        client().publishAnswer("Hi", "model", null, null, null, null, null).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String item) {
+                tokens.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b", "c"), tokens);
+    }
+}
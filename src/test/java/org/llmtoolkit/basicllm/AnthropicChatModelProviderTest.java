@@ -0,0 +1,60 @@
+package org.llmtoolkit.basicllm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.anthropic.AnthropicChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.llmtoolkit.util.PromptCaching;
+
+public class AnthropicChatModelProviderTest {
+
+    @Test
+    void testPromptPrefixBecomesSystemMessage() {
+        ChatRequest request = ChatRequest.builder()
+                .messages(
+                        SystemMessage.from("You are helpful"),
+                        UserMessage.from("Header" + PromptCaching.BREAKPOINT + "Instructions" + PromptCaching.BREAKPOINT
+                                + "Question"))
+                .build();
+
+        ChatRequest cached = AnthropicChatModelProvider.withPromptPrefix(request);
+
+        assertEquals(
+                List.of(
+                        SystemMessage.from("You are helpful"),
+                        SystemMessage.from("HeaderInstructions"),
+                        UserMessage.from("Question")),
+                cached.messages());
+    }
+
+    @Test
+    void testRequestWithoutBreakpointIsUnchanged() {
+        ChatRequest request = ChatRequest.builder()
+                .messages(UserMessage.from("Question"), AiMessage.from("Answer"))
+                .build();
+
+        assertSame(request, AnthropicChatModelProvider.withPromptPrefix(request));
+        assertEquals(
+                new PromptCaching.Split("", "Question"), PromptCaching.split(PromptCaching.BREAKPOINT + "Question"));
+    }
+
+    @Test
+    void testModelIsWrappedOnlyWhenCaching() {
+        BasicLLM llm = BasicLLM.builder()
+                .model("claude")
+                .provider(new AnthropicChatModelProvider("key"))
+                .build();
+
+        assertInstanceOf(AnthropicChatModel.class, llm.create());
+        assertFalse(PromptCaching.understandsBreakpoints(llm.create()));
+        assertTrue(PromptCaching.understandsBreakpoints(llm.toBuilder()
+                .provider(new AnthropicChatModelProvider("key", true))
+                .build()
+                .create()));
+    }
+}
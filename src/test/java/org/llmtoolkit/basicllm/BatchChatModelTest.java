@@ -0,0 +1,220 @@
+package org.llmtoolkit.basicllm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BatchChatModelTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final BasicLLM LLM = BasicLLM.builder()
+            .model("model")
+            .provider(llm -> {
+                throw new UnsupportedOperationException();
+            })
+            .temperature(0.0)
+            .maxTokens(100)
+            .build();
+
+    private HttpServer server;
+    private String baseUrl;
+    private final Map<String, String> requests = new LinkedHashMap<>();
+    private final AtomicInteger polls = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort() + "/v1";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void respond(String path, String body) {
+        server.createContext(path, exchange -> respond(exchange, body));
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        requests.put(
+                exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath(),
+                new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Reports the status only on the third poll, to exercise the backoff
+    private void respondAfterPolls(String path, String pending, String ended) {
+        server.createContext(path, exchange -> respond(exchange, polls.incrementAndGet() < 3 ? pending : ended));
+    }
+
+    @Test
+    void testOpenAiBatch() throws IOException {
+        respond("/v1/files", "{\"id\": \"file-in\"}");
+        respond("/v1/batches", "{\"id\": \"batch-1\", \"status\": \"validating\"}");
+        respondAfterPolls(
+                "/v1/batches/batch-1",
+                "{\"id\": \"batch-1\", \"status\": \"in_progress\"}",
+                "{\"id\": \"batch-1\", \"status\": \"completed\", \"output_file_id\": \"file-out\","
+                        + " \"error_file_id\": \"file-err\"}");
+        // Results come in any order
+        respond(
+                "/v1/files/file-out/content",
+                """
+                {"custom_id": "prompt-1", "response": {"status_code": 200, "body": {"choices": [{"message": {"content": "B"}}]}}, "error": null}
+                {"custom_id": "prompt-0", "response": {"status_code": 200, "body": {"choices": [{"message": {"content": "A"}}]}}, "error": null}
+                """);
+        respond(
+                "/v1/files/file-err/content",
+                """
+                {"custom_id": "prompt-2", "response": {"status_code": 400, "body": {"error": {"message": "bad"}}}, "error": null}
+                """);
+
+        List<BatchChatModel.BatchResult> results = OpenAiBatchChatModel.builder()
+                .baseUrl(baseUrl)
+                .apiKey("key")
+                .llm(LLM)
+                .pollInterval(Duration.ofMillis(1))
+                .build()
+                .answer(List.of("a", "b", "c", "d"));
+
+        assertEquals("A", results.get(0).content());
+        assertEquals("B", results.get(1).content());
+        assertFalse(results.get(2).isSuccess());
+        assertTrue(results.get(2).error().contains("bad"));
+        assertTrue(results.get(3).error().contains("No result"));
+        assertEquals(3, polls.get());
+
+        String upload = requests.get("POST /v1/files");
+        assertTrue(upload.contains("name=\"purpose\"\r\n\r\nbatch"));
+        JsonNode firstLine = objectMapper.readTree(
+                upload.lines().filter(line -> line.startsWith("{")).findFirst().orElseThrow());
+        assertEquals("prompt-0", firstLine.get("custom_id").asText());
+        assertEquals("/v1/chat/completions", firstLine.get("url").asText());
+        assertEquals("a", firstLine.at("/body/messages/0/content").asText());
+        assertEquals(100, firstLine.at("/body/max_tokens").asInt());
+        assertEquals(
+                "file-in",
+                objectMapper
+                        .readTree(requests.get("POST /v1/batches"))
+                        .get("input_file_id")
+                        .asText());
+    }
+
+    @Test
+    void testAnthropicBatch() throws IOException {
+        respond("/v1/messages/batches", "{\"id\": \"msgbatch-1\", \"processing_status\": \"in_progress\"}");
+        respondAfterPolls(
+                "/v1/messages/batches/msgbatch-1",
+                "{\"id\": \"msgbatch-1\", \"processing_status\": \"in_progress\"}",
+                "{\"id\": \"msgbatch-1\", \"processing_status\": \"ended\", \"results_url\": \"" + baseUrl
+                        + "/messages/batches/msgbatch-1/results\"}");
+        respond(
+                "/v1/messages/batches/msgbatch-1/results",
+                """
+                {"custom_id": "second", "result": {"type": "errored", "error": {"type": "invalid_request"}}}
+                {"custom_id": "first", "result": {"type": "succeeded", "message": {"content": [{"type": "thinking", "thinking": "hmm"}, {"type": "text", "text": "Hello"}]}}}
+                {"custom_id": "third", "result": {"type": "expired"}}
+                """);
+
+        Map<String, String> prompts = new LinkedHashMap<>();
+        prompts.put("first", "Hi");
+        prompts.put("second", "Hey");
+        prompts.put("third", "Yo");
+        Map<String, BatchChatModel.BatchResult> results = AnthropicBatchChatModel.builder()
+                .baseUrl(baseUrl)
+                .apiKey("key")
+                .llm(LLM)
+                .pollInterval(Duration.ofMillis(1))
+                .build()
+                .answer(prompts);
+
+        assertEquals(List.of("first", "second", "third"), List.copyOf(results.keySet()));
+        assertEquals("Hello", results.get("first").content());
+        assertTrue(results.get("second").error().contains("invalid_request"));
+        assertEquals("Request expired", results.get("third").error());
+
+        JsonNode submitted = objectMapper.readTree(requests.get("POST /v1/messages/batches"));
+        assertEquals("second", submitted.at("/requests/1/custom_id").asText());
+        assertEquals(
+                "Hey", submitted.at("/requests/1/params/messages/0/content").asText());
+    }
+
+    @Test
+    void testAnthropicBatchValidatesLikeSynchronousModel() {
+        AnthropicChatModelProvider provider = new AnthropicChatModelProvider("key");
+        List<BasicLLM> invalid = List.of(
+                LLM.toBuilder().thinking(true).thinkingTokens(100).build(),
+                LLM.toBuilder().thinkingTokens(50).build(),
+                LLM.toBuilder().thinking(true).build());
+        for (BasicLLM llm : invalid) {
+            AnthropicBatchChatModel batch = provider.createBatchChatModel(
+                    llm.toBuilder().provider(provider).build());
+
+            RuntimeException sync = assertThrows(RuntimeException.class, () -> provider.createChatModel(llm));
+            RuntimeException batched = assertThrows(RuntimeException.class, () -> batch.requestLine("id", "Hi"));
+            assertEquals(sync.getMessage(), batched.getMessage());
+        }
+
+        BasicLLM thinking = LLM.toBuilder()
+                .thinking(true)
+                .thinkingTokens(50)
+                .provider(provider)
+                .build();
+        assertNotNull(provider.createChatModel(thinking));
+        assertEquals(
+                50,
+                provider.createBatchChatModel(thinking)
+                        .requestLine("id", "Hi")
+                        .at("/params/thinking/budget_tokens")
+                        .asInt());
+    }
+
+    @Test
+    void testWriteRequestsAndTimeout(@TempDir Path directory) throws IOException {
+        respond("/v1/batches/batch-1", "{\"id\": \"batch-1\", \"status\": \"in_progress\"}");
+        OpenAiBatchChatModel model = OpenAiBatchChatModel.builder()
+                .baseUrl(baseUrl)
+                .apiKey("key")
+                .llm(LLM)
+                .pollInterval(Duration.ofMillis(1))
+                .maxWait(Duration.ofMillis(50))
+                .build();
+
+        Path file = directory.resolve("requests.jsonl");
+        model.writeRequests(Map.of("id", "Say \"hi\"\n"), file);
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        assertEquals(
+                "Say \"hi\"\n",
+                objectMapper
+                        .readTree(lines.get(0))
+                        .at("/body/messages/0/content")
+                        .asText());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> model.awaitResults("batch-1"));
+        assertTrue(e.getMessage().contains("in_progress"));
+    }
+}
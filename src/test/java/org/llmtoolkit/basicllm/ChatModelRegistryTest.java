@@ -0,0 +1,137 @@
+package org.llmtoolkit.basicllm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class ChatModelRegistryTest {
+
+    static class CountingProvider implements ChatModelProvider {
+        final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        public ChatModel createChatModel(BasicLLM llm) {
+            created.incrementAndGet();
+            return new ChatModel() {
+                @Override
+                public ChatResponse doChat(ChatRequest chatRequest) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    private final CountingProvider provider = new CountingProvider();
+
+    private BasicLLM llm(double temperature) {
+        return BasicLLM.builder()
+                .model("model")
+                .provider(provider)
+                .temperature(temperature)
+                .build();
+    }
+
+    @Test
+    void testEqualConfigurationsShareModel() {
+        try (ChatModelRegistry registry = new ChatModelRegistry()) {
+            ChatModel first = registry.get(llm(0.5));
+
+            assertSame(first, registry.get(llm(0.5)));
+            assertSame(first, registry.get(llm(0.5).toBuilder().build()));
+            assertNotSame(first, registry.get(llm(0.7)));
+            assertEquals(2, provider.created.get());
+            assertEquals(2, registry.size());
+        }
+    }
+
+    @Test
+    void testEvictCreatesNewModel() {
+        try (ChatModelRegistry registry = new ChatModelRegistry()) {
+            ChatModel first = registry.get(llm(0.5));
+
+            registry.evict(llm(0.5));
+
+            assertNotSame(first, registry.get(llm(0.5)));
+            registry.evictAll();
+            assertEquals(0, registry.size());
+        }
+    }
+
+    @Test
+    void testBasicLLMGetUsesSharedRegistry() {
+        BasicLLM llm = llm(0.1);
+        try {
+            assertSame(llm.get(), llm(0.1).get());
+            assertNotSame(llm.get(), llm.create());
+        } finally {
+            ChatModelRegistry.shared().evict(llm);
+        }
+    }
+
+    @Test
+    void testEqualProviderInstancesShareModel() {
+        try (ChatModelRegistry registry = new ChatModelRegistry()) {
+            BasicLLM first = BasicLLM.builder()
+                    .model("gpt-4.1")
+                    .provider(new OpenAiChatModelProvider(null, "key"))
+                    .build();
+            BasicLLM second = BasicLLM.builder()
+                    .model("gpt-4.1")
+                    .provider(new OpenAiChatModelProvider(null, "key"))
+                    .build();
+
+            assertSame(registry.get(first), registry.get(second));
+            assertNotSame(
+                    registry.get(first),
+                    registry.get(first.toBuilder()
+                            .provider(new OpenAiChatModelProvider(null, "other key"))
+                            .build()));
+            assertEquals(2, registry.size());
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedModelsAreEvicted() {
+        try (ChatModelRegistry registry = new ChatModelRegistry(2)) {
+            for (int i = 0; i < 10; i++) {
+                registry.get(llm(i / 10.0));
+            }
+
+            assertEquals(2, registry.size());
+            assertEquals(10, provider.created.get());
+        }
+    }
+
+    @Test
+    void testOnlyExplicitlyRemovedModelsAreClosed() {
+        AtomicInteger closed = new AtomicInteger();
+        ChatModelProvider closeableProvider = llm -> new CloseableModel(closed);
+        BasicLLM first = llm(0.5).toBuilder().provider(closeableProvider).build();
+        BasicLLM second = llm(0.7).toBuilder().provider(closeableProvider).build();
+
+        try (ChatModelRegistry registry = new ChatModelRegistry(1)) {
+            registry.get(first);
+            registry.get(second);
+            assertEquals(1, registry.size());
+            // Still usable by whoever got it
+            assertEquals(0, closed.get());
+        }
+        assertEquals(1, closed.get());
+    }
+
+    record CloseableModel(AtomicInteger closed) implements ChatModel, AutoCloseable {
+        @Override
+        public ChatResponse doChat(ChatRequest chatRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+}
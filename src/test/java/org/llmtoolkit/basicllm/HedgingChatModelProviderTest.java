@@ -0,0 +1,152 @@
+package org.llmtoolkit.basicllm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.request.DefaultChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class HedgingChatModelProviderTest {
+
+    private interface Answerer {
+        String answer() throws Exception;
+    }
+
+    private static BasicLLM llm(String name, Answerer answerer) {
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                try {
+                    return ChatResponse.builder()
+                            .aiMessage(AiMessage.from(answerer.answer()))
+                            .build();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        return BasicLLM.builder().model(name).provider(llm -> model).build();
+    }
+
+    private static ChatModel hedged(HedgingChatModelProvider provider) {
+        return provider.createChatModel(
+                BasicLLM.builder().model("hedged").provider(provider).build());
+    }
+
+    @Test
+    void testHedgeWinsAndLoserIsCancelled() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        ChatModel model = hedged(HedgingChatModelProvider.builder()
+                .llm(llm("slow", () -> {
+                    try {
+                        Thread.sleep(10_000);
+                        return "slow";
+                    } catch (InterruptedException e) {
+                        cancelled.countDown();
+                        throw e;
+                    }
+                }))
+                .llm(llm("fast", () -> "fast"))
+                .initialHedgeDelay(Duration.ofMillis(50))
+                .build());
+
+        assertEquals("fast", model.chat("Hi"));
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFailoverWithoutWaitingForHedgeDelay() {
+        ChatModel model = hedged(HedgingChatModelProvider.builder()
+                .llm(llm("failing", () -> {
+                    throw new IllegalStateException("503");
+                }))
+                .llm(llm("hanging", () -> {
+                    Thread.sleep(10_000);
+                    return "late";
+                }))
+                .llm(llm("empty", () -> ""))
+                .llm(llm("working", () -> "ok"))
+                .initialHedgeDelay(Duration.ofSeconds(30))
+                .attemptTimeout(Duration.ofSeconds(1))
+                .answerValidator(response -> !response.aiMessage().text().isEmpty())
+                .build());
+
+        long start = System.nanoTime();
+        assertEquals("ok", model.chat("Hi"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    void testAllFailed() {
+        ChatModel model = hedged(HedgingChatModelProvider.builder()
+                .llm(llm("first", () -> {
+                    throw new IllegalStateException("first down");
+                }))
+                .llm(llm("second", () -> {
+                    throw new IllegalStateException("second down");
+                }))
+                .build());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> model.chat("Hi"));
+        assertEquals(2, e.getSuppressed().length);
+    }
+
+    @Test
+    void testFailoversDoNotShortenHedgeDelay() {
+        ChatModel model = hedged(HedgingChatModelProvider.builder()
+                .llm(llm("failing", () -> {
+                    throw new IllegalStateException("503");
+                }))
+                .llm(llm("working", () -> "ok"))
+                .initialHedgeDelay(Duration.ofSeconds(10))
+                .build());
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ok", model.chat("Hi"));
+        }
+
+        assertEquals(
+                TimeUnit.SECONDS.toNanos(10), ((HedgingChatModelProvider.HedgedChatModel) model).hedgeDelayNanos());
+    }
+
+    @Test
+    void testReportsFirstConfiguration() {
+        ChatModel primary = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ChatRequestParameters defaultRequestParameters() {
+                return DefaultChatRequestParameters.builder()
+                        .modelName("primary")
+                        .temperature(0.3)
+                        .build();
+            }
+
+            @Override
+            public ModelProvider provider() {
+                return ModelProvider.OPEN_AI;
+            }
+        };
+        ChatModel model = hedged(HedgingChatModelProvider.builder()
+                .llm(BasicLLM.builder()
+                        .model("primary")
+                        .provider(llm -> primary)
+                        .build())
+                .llm(llm("other", () -> "ok"))
+                .build());
+
+        assertEquals(ModelProvider.OPEN_AI, model.provider());
+        assertEquals(primary.defaultRequestParameters(), model.defaultRequestParameters());
+    }
+}
@@ -0,0 +1,131 @@
+package org.llmtoolkit.basicllm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class RateGovernorTest {
+
+    @Test
+    void testTokenBucketQueuesBehindDebt() {
+        AtomicLong now = new AtomicLong();
+        // One permit per second
+        TokenBucket bucket = new TokenBucket(60, now::get);
+
+        assertEquals(0, bucket.reserve(60));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.reserve(1));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), bucket.reserve(1));
+
+        now.set(TimeUnit.SECONDS.toNanos(10));
+        // 2 permits of debt paid off, 8 available, 5 given back once the real cost is known
+        bucket.adjust(-5);
+        assertEquals(0, bucket.reserve(13));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.reserve(1));
+    }
+
+    @Test
+    void testMaxInFlight() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                peak.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                concurrent.decrementAndGet();
+                return ChatResponse.builder().aiMessage(AiMessage.from("ok")).build();
+            }
+        };
+        RateGovernor governor = RateGovernor.builder().maxInFlight(2).build();
+        ChatModel governed = governor.govern(model);
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<String>> answers = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                answers.add(executor.submit(() -> governed.chat("hi")));
+            }
+            while (governor.getStats().queueDepth() < 3) {
+                Thread.sleep(5);
+            }
+            assertEquals(2, governor.getStats().inFlight());
+            release.countDown();
+            for (Future<String> answer : answers) {
+                assertEquals("ok", answer.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, peak.get());
+        RateGovernor.Stats stats = governor.getStats();
+        assertEquals(new RateGovernor.Stats(0, 0, 5, stats.totalWait(), stats.maxWait()), stats);
+        assertTrue(stats.maxWait().compareTo(stats.averageWait()) >= 0);
+    }
+
+    @Test
+    void testCallersWaitingForRateLimitsTakeNoSlot() throws Exception {
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                return ChatResponse.builder().aiMessage(AiMessage.from("ok")).build();
+            }
+        };
+        RateGovernor governor =
+                RateGovernor.builder().requestsPerMinute(1).maxInFlight(1).build();
+        ChatModel governed = governor.govern(model);
+        assertEquals("ok", governed.chat("first"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> governed.chat("second"));
+            while (governor.getStats().queueDepth() < 1) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, governor.getStats().inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTokensPerMinuteUsesReportedUsage() {
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from("ok"))
+                        .tokenUsage(new TokenUsage(5, 5))
+                        .build();
+            }
+        };
+        RateGovernor governor = RateGovernor.builder().tokensPerMinute(6_000).build();
+        ChatModel governed = governor.govern(model);
+
+        // Estimated at 1000 tokens each, but only 10 are used, so the bucket never runs dry
+        String prompt = "x".repeat(4_000);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ok", governed.chat(prompt));
+        }
+        assertTrue(governor.getStats().maxWait().toMillis() < 1000);
+    }
+}
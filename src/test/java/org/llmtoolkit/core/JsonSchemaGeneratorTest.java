@@ -0,0 +1,118 @@
+package org.llmtoolkit.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.llmtoolkit.core.annotations.Cue;
+import org.llmtoolkit.util.ClassToString;
+
+public class JsonSchemaGeneratorTest {
+
+    @Cue("A node of the project tree")
+    record Task(
+            @Cue("Short title") String title,
+            int estimate,
+            Optional<Double> progress,
+            LocalDate due,
+            Priority priority,
+            List<Task> subtasks,
+            Map<String, Person> reviewers) {}
+
+    record Person(String name, Priority priority) {}
+
+    enum Priority {
+        @Cue("Blocks a release")
+        HIGH,
+        LOW
+    }
+
+    @Test
+    void testRecordGraph() throws Exception {
+        JsonNode expected = new ObjectMapper()
+                .readTree(
+                        """
+                {
+                  "type": "object",
+                  "description": "A node of the project tree",
+                  "properties": {
+                    "title": {"type": "string", "description": "Short title"},
+                    "estimate": {"type": "integer"},
+                    "progress": {"type": "number"},
+                    "due": {"type": "string", "format": "date"},
+                    "priority": {"$ref": "#/$defs/Priority"},
+                    "subtasks": {"type": "array", "items": {"$ref": "#/$defs/Task"}},
+                    "reviewers": {"type": "object", "additionalProperties": {"$ref": "#/$defs/Person"}}
+                  },
+                  "required": ["title", "estimate", "progress", "due", "priority", "subtasks", "reviewers"],
+                  "additionalProperties": false,
+                  "$defs": {
+                    "Priority": {"type": "string", "enum": ["HIGH", "LOW"], "description": "HIGH: Blocks a release"},
+                    "Task": {
+                      "type": "object",
+                      "description": "A node of the project tree",
+                      "properties": {
+                        "title": {"type": "string", "description": "Short title"},
+                        "estimate": {"type": "integer"},
+                        "progress": {"type": "number"},
+                        "due": {"type": "string", "format": "date"},
+                        "priority": {"$ref": "#/$defs/Priority"},
+                        "subtasks": {"type": "array", "items": {"$ref": "#/$defs/Task"}},
+                        "reviewers": {"type": "object", "additionalProperties": {"$ref": "#/$defs/Person"}}
+                      },
+                      "required": ["title", "estimate", "progress", "due", "priority", "subtasks", "reviewers"],
+                      "additionalProperties": false
+                    },
+                    "Person": {
+                      "type": "object",
+                      "properties": {"name": {"type": "string"}, "priority": {"$ref": "#/$defs/Priority"}},
+                      "required": ["name", "priority"],
+                      "additionalProperties": false
+                    }
+                  }
+                }
+                """);
+
+        assertEquals(expected, JsonSchemaGenerator.schemaFor(Task.class));
+    }
+
+    record Distance(double value) {
+        Distance(@Cue("In kilometers") double value) {
+            this.value = value;
+        }
+    }
+
+    @Test
+    void testCueOnConstructorParameter() {
+        assertEquals(
+                "In kilometers",
+                JsonSchemaGenerator.schemaFor(Distance.class)
+                        .at("/properties/value/description")
+                        .asText());
+        assertTrue(ClassToString.compactRecords(Distance.class).text().contains("@Cue(\"In kilometers\")"));
+    }
+
+    @Test
+    void testSchemaIsCachedAndCopied() {
+        ObjectNode schema = JsonSchemaGenerator.schemaFor(Person.class);
+        schema.put("type", "changed");
+
+        assertEquals(
+                "object",
+                JsonSchemaGenerator.schemaFor(Person.class).get("type").asText());
+        assertSame(JsonSchemaGenerator.schemaJsonFor(Person.class), JsonSchemaGenerator.schemaJsonFor(Person.class));
+        assertTrue(
+                OutputInstructions.singleObjectInstructions(Person.class, OutputInstructions.SchemaFormat.JSON_SCHEMA)
+                        .contains(JsonSchemaGenerator.schemaJsonFor(Person.class)));
+        // No compact fallback to another format
+        assertTrue(OutputInstructions.instructions(Task.class, OutputInstructions.SchemaFormat.JSON_SCHEMA, 1)
+                .array()
+                .contains(JsonSchemaGenerator.schemaJsonFor(Task.class)));
+    }
+}
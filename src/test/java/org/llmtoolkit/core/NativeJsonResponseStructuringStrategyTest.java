@@ -0,0 +1,131 @@
+package org.llmtoolkit.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ResponseFormatType;
+import dev.langchain4j.model.chat.request.json.JsonArraySchema;
+import dev.langchain4j.model.chat.request.json.JsonEnumSchema;
+import dev.langchain4j.model.chat.request.json.JsonIntegerSchema;
+import dev.langchain4j.model.chat.request.json.JsonObjectSchema;
+import dev.langchain4j.model.chat.request.json.JsonReferenceSchema;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.llmtoolkit.core.annotations.Cue;
+import org.llmtoolkit.core.annotations.PT;
+
+public class NativeJsonResponseStructuringStrategyTest {
+
+    record City(String name, @Cue("In millions") int population, Size size) {}
+
+    enum Size {
+        SMALL,
+        BIG
+    }
+
+    record Node(String name, List<Node> children) {}
+
+    record Census(String country, Map<String, Integer> populationByCity) {}
+
+    record Note(String title, Object payload) {}
+
+    interface Atlas {
+        @PT(templatePath = "unused")
+        List<City> cities(String prompt);
+
+        @PT(templatePath = "unused")
+        Node tree(String prompt);
+
+        @PT(templatePath = "unused")
+        List<Census> censuses(String prompt);
+
+        @PT(templatePath = "unused")
+        Note note(String prompt);
+    }
+
+    private final NativeJsonResponseStructuringStrategy strategy = new NativeJsonResponseStructuringStrategy();
+
+    @Test
+    void testListIsRequestedWrappedAndParsedStrictly() throws Exception {
+        List<ChatRequest> requests = new ArrayList<>();
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                requests.add(request);
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from(
+                                "{\"items\": [{\"name\": \"Paris\", \"population\": 2, \"size\": \"BIG\"}]}"))
+                        .build();
+            }
+        };
+        Method method = Atlas.class.getMethod("cities", String.class);
+        ReturnTypeInfo typeInfo = ReturnTypeInfo.from(method.getGenericReturnType());
+
+        Object service = strategy.createService(Atlas.class, model, null);
+        Object answer = strategy.prepareServiceCall(service, method).apply("Capitals");
+
+        assertEquals("", strategy.outputInstructions(method, typeInfo));
+        assertEquals(List.of(new City("Paris", 2, Size.BIG)), strategy.convertResult(answer, typeInfo));
+
+        ChatRequest request = requests.get(0);
+        assertEquals(ResponseFormatType.JSON, request.responseFormat().type());
+        assertEquals("CityList", request.responseFormat().jsonSchema().name());
+        JsonObjectSchema root =
+                (JsonObjectSchema) request.responseFormat().jsonSchema().rootElement();
+        assertEquals(List.of("items"), root.required());
+        JsonObjectSchema city =
+                (JsonObjectSchema) ((JsonArraySchema) root.properties().get("items")).items();
+        assertEquals(List.of("name", "population", "size"), city.required());
+        assertEquals("In millions", ((JsonIntegerSchema) city.properties().get("population")).description());
+        assertEquals(
+                List.of("SMALL", "BIG"), ((JsonEnumSchema) city.properties().get("size")).enumValues());
+
+        // No repair or YAML fallback
+        assertThrows(RuntimeException.class, () -> strategy.convertResult("```json\n{\"items\": []}\n```", typeInfo));
+        assertThrows(RuntimeException.class, () -> strategy.convertResult("[]", typeInfo));
+    }
+
+    @Test
+    void testRecursiveTypeIsDefinedOnRoot() throws Exception {
+        Method method = Atlas.class.getMethod("tree", String.class);
+        ReturnTypeInfo typeInfo = ReturnTypeInfo.from(method.getGenericReturnType());
+
+        JsonObjectSchema root = (JsonObjectSchema) NativeJsonResponseStructuringStrategy.responseFormat(typeInfo)
+                .jsonSchema()
+                .rootElement();
+
+        JsonObjectSchema child =
+                (JsonObjectSchema) ((JsonArraySchema) root.properties().get("children")).items();
+        assertEquals(
+                JsonReferenceSchema.builder().reference("Node").build(),
+                ((JsonArraySchema) child.properties().get("children")).items());
+        assertEquals(child, root.definitions().get("Node"));
+
+        assertEquals(
+                new Node("a", List.of(new Node("b", List.of()))),
+                strategy.convertResult(
+                        "{\"name\": \"a\", \"children\": [{\"name\": \"b\", \"children\": []}]}", typeInfo));
+        assertThrows(
+                UnsupportedOperationException.class, () -> strategy.createService(Atlas.class, null, services -> {}));
+    }
+
+    @Test
+    void testOpenObjectsAreRejected() throws Exception {
+        // Strict mode would constrain them to empty objects
+        IllegalArgumentException map = assertThrows(
+                IllegalArgumentException.class,
+                () -> strategy.prepareServiceCall(null, Atlas.class.getMethod("censuses", String.class)));
+        assertTrue(map.getMessage().contains("$.items[].populationByCity"), map.getMessage());
+
+        IllegalArgumentException untyped = assertThrows(
+                IllegalArgumentException.class,
+                () -> strategy.prepareServiceCall(null, Atlas.class.getMethod("note", String.class)));
+        assertTrue(untyped.getMessage().contains("$.payload"), untyped.getMessage());
+    }
+}
@@ -0,0 +1,138 @@
+package org.llmtoolkit.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.InvalidRequestException;
+import dev.langchain4j.exception.RateLimitException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class RetryPolicyTest {
+
+    private static RetryPolicy.RetryPolicyBuilder fastRetries() {
+        return RetryPolicy.builder().initialBackoff(Duration.ofMillis(1)).maxBackoff(Duration.ofMillis(5));
+    }
+
+    @Test
+    void testClassification() {
+        assertTrue(RetryPolicy.isTransient(new HttpException(429, "slow down")));
+        assertTrue(RetryPolicy.isTransient(new HttpException(503, "overloaded")));
+        assertFalse(RetryPolicy.isTransient(new HttpException(400, "bad request")));
+        assertTrue(RetryPolicy.isTransient(new RateLimitException("limit")));
+        assertTrue(RetryPolicy.isTransient(new RuntimeException(new HttpTimeoutException("timeout"))));
+        assertFalse(RetryPolicy.isTransient(new InvalidRequestException("invalid")));
+        assertFalse(RetryPolicy.isTransient(new IllegalArgumentException("bug")));
+    }
+
+    @Test
+    void testRetriesTransientFailuresUpToMaxAttempts() {
+        RetryPolicy policy = fastRetries().maxAttempts(3).build();
+
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals("ok", policy.execute(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new HttpException(500, "error");
+            }
+            return "ok";
+        }));
+
+        AtomicInteger failingCalls = new AtomicInteger();
+        assertThrows(
+                HttpException.class,
+                () -> policy.execute(() -> {
+                    failingCalls.incrementAndGet();
+                    throw new HttpException(500, "error");
+                }));
+        assertEquals(3, failingCalls.get());
+
+        AtomicInteger permanentCalls = new AtomicInteger();
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> policy.execute(() -> {
+                    permanentCalls.incrementAndGet();
+                    throw new IllegalArgumentException("bug");
+                }));
+        assertEquals(1, permanentCalls.get());
+    }
+
+    @Test
+    void testParseFailuresAreRetriedOnlyIfEnabled() {
+        RuntimeException parseFailure = new RuntimeException("Not JSON");
+
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(RuntimeException.class, () -> fastRetries()
+                .build()
+                .execute(
+                        () -> {
+                            calls.incrementAndGet();
+                            throw parseFailure;
+                        },
+                        e -> e == parseFailure));
+        assertEquals(1, calls.get());
+
+        AtomicInteger reasks = new AtomicInteger();
+        assertEquals(
+                "parsed",
+                fastRetries()
+                        .isToRetryOnParseFailure(true)
+                        .build()
+                        .execute(
+                                () -> {
+                                    if (reasks.incrementAndGet() == 1) {
+                                        throw parseFailure;
+                                    }
+                                    return "parsed";
+                                },
+                                e -> e == parseFailure));
+    }
+
+    @Test
+    void testDeadlineStopsRetries() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxAttempts(100)
+                .initialBackoff(Duration.ofMillis(20))
+                .deadline(Duration.ofMillis(100))
+                .build();
+
+        AtomicInteger calls = new AtomicInteger();
+        long start = System.nanoTime();
+        HttpException e = assertThrows(
+                HttpException.class,
+                () -> policy.execute(() -> {
+                    calls.incrementAndGet();
+                    throw new HttpException(429, "slow down");
+                }));
+
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        assertTrue(calls.get() < 100);
+        assertEquals(1, e.getSuppressed().length);
+    }
+
+    @Test
+    void testHungAttemptFailsAtDeadline() throws InterruptedException {
+        RetryPolicy policy = fastRetries().deadline(Duration.ofMillis(100)).build();
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        RuntimeException e = assertThrows(
+                RuntimeException.class,
+                () -> policy.execute(() -> {
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException hung) {
+                        interrupted.countDown();
+                    }
+                    return "late";
+                }));
+
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,76 @@
+package org.llmtoolkit.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.Test;
+
+public class ReturnTypeInfoTest {
+
+    record City(String name) {}
+
+    interface Types {
+        CompletableFuture<City> city();
+
+        CompletableFuture<List<City>> cities();
+
+        CompletableFuture<String> text();
+
+        City syncCity();
+
+        Flow.Publisher<City> streamedCities();
+
+        CompletableFuture<Map<String, City>> cityMap();
+
+        CompletableFuture<Integer> number();
+    }
+
+    private static ReturnTypeInfo info(String method) throws Exception {
+        return ReturnTypeInfo.from(Types.class.getMethod(method).getGenericReturnType());
+    }
+
+    @Test
+    void testCompletableFutureIsUnwrapped() throws Exception {
+        ReturnTypeInfo city = info("city");
+        assertTrue(city.isAsync());
+        assertFalse(city.isList());
+        assertEquals(City.class, city.getResultType());
+        assertEquals(City.class, city.getValueType());
+
+        ReturnTypeInfo cities = info("cities");
+        assertTrue(cities.isAsync());
+        assertTrue(cities.isList());
+        assertFalse(cities.isStreaming());
+        assertEquals(List.class, ((ParameterizedType) cities.getResultType()).getRawType());
+        assertEquals(City.class, cities.getValueType());
+
+        assertTrue(info("text").isString());
+        assertTrue(info("text").isAsync());
+    }
+
+    @Test
+    void testSynchronousAndStreamingTypesAreNotAsync() throws Exception {
+        assertFalse(info("syncCity").isAsync());
+
+        ReturnTypeInfo streamed = info("streamedCities");
+        assertFalse(streamed.isAsync());
+        assertTrue(streamed.isStreaming());
+        assertTrue(streamed.isList());
+        assertEquals(City.class, streamed.getValueType());
+    }
+
+    @Test
+    void testUnsupportedTypesInsideCompletableFutureAreRejected() {
+        for (String method : List.of("cityMap", "number")) {
+            assertThrows(
+                    UnsupportedOperationException.class,
+                    () -> ReturnTypeInfo.validateType(
+                            Types.class.getMethod(method).getGenericReturnType()),
+                    method);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.llmtoolkit.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class StreamingArrayOutputTest {
+
+    static final AtomicInteger parsed = new AtomicInteger();
+
+    record City(String name) {
+        City {
+            parsed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Streams the chunks from another thread, waiting for the gate before the chunks after the first one
+     */
+    record ChunkedModel(List<String> chunks, CountDownLatch gate) implements StreamingChatModel {
+        ChunkedModel(String... chunks) {
+            this(List.of(chunks), new CountDownLatch(0));
+        }
+
+        @Override
+        public void doChat(ChatRequest request, StreamingChatResponseHandler handler) {
+            new Thread(() -> {
+                        try {
+                            handler.onPartialResponse(chunks.get(0));
+                            gate.await(10, TimeUnit.SECONDS);
+                            chunks.stream().skip(1).forEach(handler::onPartialResponse);
+                            handler.onCompleteResponse(ChatResponse.builder()
+                                    .aiMessage(AiMessage.from(String.join("", chunks)))
+                                    .build());
+                        } catch (InterruptedException e) {
+                            handler.onError(e);
+                        }
+                    })
+                    .start();
+        }
+    }
+
+    static class CollectingSubscriber implements Flow.Subscriber<City> {
+        final List<City> cities = new ArrayList<>();
+        final CompletableFuture<List<City>> done = new CompletableFuture<>();
+        final long cancelAfter;
+        Flow.Subscription subscription;
+
+        CollectingSubscriber(long cancelAfter) {
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(City city) {
+            cities.add(city);
+            if (cities.size() == cancelAfter) {
+                subscription.cancel();
+                done.complete(cities);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(cities);
+        }
+    }
+
+    @Test
+    void testElementsArePublishedAsTheyArrive() throws Exception {
+        ChunkedModel model = new ChunkedModel(
+                "Here [as requested]:\n```json\n[{\"name\": \"Pa", "ris\"}, {\"name\"", ": \"Rome\"}]\n```");
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+
+        StreamingArrayOutput.publish(model, "Capitals", City.class).subscribe(subscriber);
+
+        assertEquals(List.of(new City("Paris"), new City("Rome")), subscriber.done.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testAnswerThatCannotBeStreamedIsParsedWhole() throws Exception {
+        List<City> streamed = new ArrayList<>();
+        ChunkedModel model = new ChunkedModel("Sure: [{\"name\": \"Paris\"}", "]");
+
+        List<City> cities = StreamingArrayOutput.stream(model, "Capitals", City.class, streamed::add)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of(new City("Paris")), cities);
+        assertEquals(cities, streamed);
+    }
+
+    @Test
+    void testTruncatedAnswerFailsInsteadOfRepairingTheLastElement() {
+        List<City> streamed = new ArrayList<>();
+        ChunkedModel model = new ChunkedModel("[{\"name\": \"Paris\"}, ", "{\"name\": \"Ro");
+
+        CompletableFuture<List<City>> cities =
+                StreamingArrayOutput.stream(model, "Capitals", City.class, streamed::add);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> cities.get(10, TimeUnit.SECONDS));
+        assertTrue(
+                e.getCause().getMessage().contains("after 1 elements"),
+                e.getCause().getMessage());
+        assertEquals(List.of(new City("Paris")), streamed);
+    }
+
+    @Test
+    void testCancellationStopsParsingTheAnswer() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        ChunkedModel model = new ChunkedModel(
+                List.of("[{\"name\": \"Paris\"}, ", "{\"name\": \"Rome\"}, {\"name\": \"Oslo\"}]"), gate);
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+
+        StreamingArrayOutput.publish(model, "Capitals", City.class).subscribe(subscriber);
+        assertEquals(List.of(new City("Paris")), subscriber.done.get(10, TimeUnit.SECONDS));
+        int parsedBefore = parsed.get();
+        gate.countDown();
+        Thread.sleep(100);
+
+        assertEquals(parsedBefore, parsed.get());
+        assertEquals(List.of(new City("Paris")), subscriber.cities);
+    }
+}
@@ -0,0 +1,508 @@
+package org.llmtoolkit.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.request.DefaultChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.service.AiServices;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.llmtoolkit.basicllm.RateGovernor;
+import org.llmtoolkit.core.annotations.PT;
+import org.llmtoolkit.core.cache.InMemoryResponseCache;
+import org.llmtoolkit.core.cache.ResponseCache;
+import org.llmtoolkit.util.PromptCaching;
+import org.llmtoolkit.util.json.JsonUtils;
+
+public class TemplatedLLMServiceFactoryTest {
+
+    record City(String name) {}
+
+    interface CityService {
+        @PT(templatePath = "unused")
+        CompletableFuture<List<City>> cities(String prompt);
+    }
+
+    interface AsyncCityService {
+        @PT(templatePath = "unused")
+        CompletableFuture<City> city(String prompt);
+    }
+
+    interface TagService {
+        @PT(templatePath = "unused")
+        Flow.Publisher<String> tags(String prompt);
+    }
+
+    // Renders the single argument as the prompt
+    private static final TemplateProcessor ARGUMENT_AS_PROMPT = new TemplateProcessor() {
+        @Override
+        public void validateTemplate(Method method) {}
+
+        @Override
+        public String preparePrompt(Method method, Object[] args) {
+            return (String) args[0];
+        }
+    };
+
+    @Test
+    void testConcurrentIdenticalCallsShareOneModelCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                calls.incrementAndGet();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from("[{\"name\": \"Paris\"}]"))
+                        .build();
+            }
+        };
+        CityService service = TemplatedLLMServiceFactory.builder()
+                .model(model)
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .isToShareInFlightCalls(true)
+                .build()
+                .create(CityService.class);
+
+        List<CompletableFuture<List<City>>> same = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            same.add(service.cities("Capitals"));
+        }
+        CompletableFuture<List<City>> other = service.cities("Other capitals");
+        while (calls.get() < 2) {
+            Thread.sleep(5);
+        }
+        // Give the remaining identical calls time to join instead of starting their own
+        Thread.sleep(100);
+        release.countDown();
+
+        for (CompletableFuture<List<City>> cities : same) {
+            assertEquals(List.of(new City("Paris")), cities.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of(new City("Paris")), other.get(10, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+        // Each caller gets its own result
+        assertNotSame(same.get(0).get(), same.get(1).get());
+
+        // Calls that do not overlap are not shared
+        service.cities("Capitals").get(10, TimeUnit.SECONDS);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testErrorOfSharedCallReachesCallersThatJoined() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                calls.incrementAndGet();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new AssertionError("Model stub failed");
+            }
+        };
+        CityService service = TemplatedLLMServiceFactory.builder()
+                .model(model)
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .isToShareInFlightCalls(true)
+                .build()
+                .create(CityService.class);
+
+        CompletableFuture<List<City>> owner = service.cities("Capitals");
+        while (calls.get() < 1) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<List<City>> joined = service.cities("Capitals");
+        // Give the identical call time to join
+        Thread.sleep(100);
+        release.countDown();
+
+        for (CompletableFuture<List<City>> cities : List.of(owner, joined)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> cities.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(AssertionError.class, e.getCause());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testResponseCacheIsKeyedByModelId() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        // Like Anthropic models, reports no model name in its default request parameters
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from("[{\"name\": \"City " + calls.incrementAndGet() + "\"}]"))
+                        .build();
+            }
+        };
+        ResponseCache cache = InMemoryResponseCache.builder().build();
+
+        TemplatedLLMServiceFactory withoutModelId = TemplatedLLMServiceFactory.builder()
+                .model(model)
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .responseCache(cache)
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> withoutModelId.create(CityService.class));
+
+        CityService small = createCached(model, cache, "small-model");
+        CityService large = createCached(model, cache, "large-model");
+
+        assertEquals(List.of(new City("City 1")), small.cities("Capitals").get(10, TimeUnit.SECONDS));
+        assertEquals(List.of(new City("City 1")), small.cities("Capitals").get(10, TimeUnit.SECONDS));
+        assertEquals(List.of(new City("City 2")), large.cities("Capitals").get(10, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testResponseCacheIsKeyedByModelParameters() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ResponseCache cache = InMemoryResponseCache.builder().build();
+        Function<Double, CityService> serviceWithTemperature = temperature -> TemplatedLLMServiceFactory.builder()
+                .model(new ChatModel() {
+                    @Override
+                    public ChatResponse doChat(ChatRequest request) {
+                        return ChatResponse.builder()
+                                .aiMessage(AiMessage.from("[{\"name\": \"City " + calls.incrementAndGet() + "\"}]"))
+                                .build();
+                    }
+
+                    @Override
+                    public ChatRequestParameters defaultRequestParameters() {
+                        return DefaultChatRequestParameters.builder()
+                                .modelName("model")
+                                .temperature(temperature)
+                                .build();
+                    }
+                })
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .responseCache(cache)
+                .build()
+                .create(CityService.class);
+
+        assertEquals(
+                List.of(new City("City 1")),
+                serviceWithTemperature.apply(0.0).cities("Capitals").get(10, TimeUnit.SECONDS));
+        assertEquals(
+                List.of(new City("City 1")),
+                serviceWithTemperature.apply(0.0).cities("Capitals").get(10, TimeUnit.SECONDS));
+        assertEquals(
+                List.of(new City("City 2")),
+                serviceWithTemperature.apply(1.0).cities("Capitals").get(10, TimeUnit.SECONDS));
+    }
+
+    private static CityService createCached(ChatModel model, ResponseCache cache, String modelId) {
+        return TemplatedLLMServiceFactory.builder()
+                .model(model)
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .responseCache(cache)
+                .modelId(modelId)
+                .build()
+                .create(CityService.class);
+    }
+
+    static class PromptRecordingModel implements ChatModel {
+        final List<String> prompts = new ArrayList<>();
+
+        @Override
+        public ChatResponse doChat(ChatRequest request) {
+            prompts.add(((UserMessage) request.messages().get(0)).singleText());
+            return ChatResponse.builder()
+                    .aiMessage(AiMessage.from("[{\"name\": \"Paris\"}]"))
+                    .build();
+        }
+
+        @Override
+        public ModelProvider provider() {
+            return ModelProvider.ANTHROPIC;
+        }
+    }
+
+    static class BreakpointAwareModel extends PromptRecordingModel implements PromptCaching.BreakpointAware {}
+
+    @Test
+    void testBreakpointIsOnlySentToModelsThatUnderstandIt() throws Exception {
+        PromptRecordingModel plain = new PromptRecordingModel();
+        BreakpointAwareModel aware = new BreakpointAwareModel();
+
+        callWithCachedPrefix(plain);
+        callWithCachedPrefix(aware);
+        callWithCachedPrefix(RateGovernor.builder().build().govern(aware));
+
+        assertFalse(PromptCaching.hasBreakpoint(plain.prompts.get(0)));
+        assertTrue(plain.prompts.get(0).endsWith("\n\nCapitals"));
+        assertEquals(2, aware.prompts.size());
+        for (String prompt : aware.prompts) {
+            assertEquals(
+                    new PromptCaching.Split(plain.prompts.get(0).replace("\n\nCapitals", ""), "Capitals"),
+                    PromptCaching.split(prompt));
+        }
+    }
+
+    private static void callWithCachedPrefix(ChatModel model) throws Exception {
+        TemplatedLLMServiceFactory.builder()
+                .model(model)
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .isToCachePromptPrefix(true)
+                .build()
+                .create(CityService.class)
+                .cities("Capitals")
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testInvocationPlanIsPreparedOncePerMethod() throws Exception {
+        AtomicInteger renderers = new AtomicInteger();
+        AtomicInteger instructions = new AtomicInteger();
+        AtomicInteger serviceCalls = new AtomicInteger();
+        TemplateProcessor templateProcessor = new TemplateProcessor() {
+            @Override
+            public void validateTemplate(Method method) {}
+
+            @Override
+            public String preparePrompt(Method method, Object[] args) {
+                return (String) args[0];
+            }
+
+            @Override
+            public Function<Object[], String> prepareRenderer(Method method) {
+                renderers.incrementAndGet();
+                return args -> preparePrompt(method, args);
+            }
+        };
+        ResponseStructuringStrategy strategy = new JacksonSourceResponseStructuringStrategy() {
+            @Override
+            public String outputInstructions(Method method, ReturnTypeInfo typeInfo) {
+                instructions.incrementAndGet();
+                return super.outputInstructions(method, typeInfo);
+            }
+
+            @Override
+            public Function<String, Object> prepareServiceCall(Object service, Method originalMethod) {
+                serviceCalls.incrementAndGet();
+                return super.prepareServiceCall(service, originalMethod);
+            }
+        };
+        PromptRecordingModel model = new PromptRecordingModel();
+        CityService service = TemplatedLLMServiceFactory.builder()
+                .model(model)
+                .templateProcessor(templateProcessor)
+                .serviceStrategy(strategy)
+                .build()
+                .create(CityService.class);
+
+        for (String prompt : List.of("Capitals", "Ports", "Capitals")) {
+            assertEquals(List.of(new City("Paris")), service.cities(prompt).get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(List.of(1, 1, 1), List.of(renderers.get(), instructions.get(), serviceCalls.get()));
+        assertTrue(model.prompts.get(1).startsWith("Ports\n"));
+        assertTrue(model.prompts.get(1).endsWith(OutputInstructions.arrayInstructions(City.class)));
+    }
+
+    @Test
+    void testStreamedStringsAreAskedForAsPlainArray() throws Exception {
+        List<String> prompts = new ArrayList<>();
+        StreamingChatModel streamingModel = new StreamingChatModel() {
+            @Override
+            public void doChat(ChatRequest request, StreamingChatResponseHandler handler) {
+                prompts.add(((UserMessage) request.messages().get(0)).singleText());
+                handler.onPartialResponse("[\"red\", \"green\"]");
+                handler.onCompleteResponse(ChatResponse.builder()
+                        .aiMessage(AiMessage.from("[\"red\", \"green\"]"))
+                        .build());
+            }
+        };
+        TagService service = TemplatedLLMServiceFactory.builder()
+                .model(new PromptRecordingModel())
+                .streamingModel(streamingModel)
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .build()
+                .create(TagService.class);
+        List<String> tags = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        service.tags("Colors").subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String tag) {
+                tags.add(tag);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of("red", "green"), tags);
+        assertEquals("Colors" + OutputInstructions.scalarArrayInstructions(String.class), prompts.get(0));
+        assertFalse(prompts.get(0).contains("java bean"));
+    }
+
+    @Test
+    void testStrategyAugmentingEveryPromptIsStillCalled() throws Exception {
+        // Implements only the per-call method, as strategies did before outputInstructions
+        ResponseStructuringStrategy strategy = new ResponseStructuringStrategy() {
+            @Override
+            public <T> Object createService(
+                    Class<T> serviceInterface, ChatModel model, Consumer<AiServices<?>> customizer) {
+                return model;
+            }
+
+            @Override
+            public Object invokeService(Object service, String prompt, Method originalMethod) {
+                return ((ChatModel) service).chat(prompt);
+            }
+
+            @Override
+            public String augmentPromptWithOutputInstructions(String prompt, Method method, ReturnTypeInfo typeInfo) {
+                return prompt + " as a JSON array of " + typeInfo.getValueType().getSimpleName();
+            }
+
+            @Override
+            public Object convertResult(Object result, ReturnTypeInfo typeInfo) {
+                return JsonUtils.parseJsonOrYamlArray((String) result, typeInfo.getValueType());
+            }
+        };
+        PromptRecordingModel model = new PromptRecordingModel();
+        CityService service = TemplatedLLMServiceFactory.builder()
+                .model(model)
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .serviceStrategy(strategy)
+                .isToCachePromptPrefix(true)
+                .build()
+                .create(CityService.class);
+
+        assertEquals(List.of(new City("Paris")), service.cities("Capitals").get(10, TimeUnit.SECONDS));
+        assertEquals(List.of("Capitals as a JSON array of City"), model.prompts);
+    }
+
+    private static ChatModel answering(Function<String, String> answer) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest request) {
+                String prompt = ((UserMessage) request.messages().get(0)).singleText();
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from(answer.apply(prompt)))
+                        .build();
+            }
+        };
+    }
+
+    @Test
+    void testAsyncCallRunsOnExecutorWithoutBlockingCaller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Runnable> submitted = new ArrayList<>();
+        Executor executor = task -> {
+            submitted.add(task);
+            new Thread(task, "test-executor").start();
+        };
+        List<String> threads = new ArrayList<>();
+        AsyncCityService service = TemplatedLLMServiceFactory.builder()
+                .model(answering(prompt -> {
+                    threads.add(Thread.currentThread().getName());
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return "{\"name\": \"Paris\"}";
+                }))
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .asyncExecutor(executor)
+                .build()
+                .create(AsyncCityService.class);
+
+        CompletableFuture<City> city = service.city("Capital of France");
+        assertFalse(city.isDone());
+        release.countDown();
+
+        assertEquals(new City("Paris"), city.get(10, TimeUnit.SECONDS));
+        assertEquals(1, submitted.size());
+        assertEquals(List.of("test-executor"), threads);
+    }
+
+    @Test
+    void testAsyncFailuresCompleteFutureExceptionally() {
+        AsyncCityService failing = TemplatedLLMServiceFactory.builder()
+                .model(answering(prompt -> {
+                    throw new IllegalStateException("Model is down");
+                }))
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .build()
+                .create(AsyncCityService.class);
+        AsyncCityService unparsable = TemplatedLLMServiceFactory.builder()
+                .model(answering(prompt -> "[1, 2]"))
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .build()
+                .create(AsyncCityService.class);
+
+        ExecutionException down = assertThrows(
+                ExecutionException.class, () -> failing.city("Capital").get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, down.getCause());
+        assertEquals("Model is down", down.getCause().getMessage());
+        assertThrows(ExecutionException.class, () -> unparsable.city("Capital").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testDefaultExecutorRunsCallsOnDaemonThreads() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        AsyncCityService service = TemplatedLLMServiceFactory.builder()
+                .model(answering(prompt -> {
+                    threads.add(Thread.currentThread());
+                    return "{\"name\": \"Paris\"}";
+                }))
+                .templateProcessor(ARGUMENT_AS_PROMPT)
+                .build()
+                .create(AsyncCityService.class);
+
+        assertEquals(new City("Paris"), service.city("Capital").get(10, TimeUnit.SECONDS));
+
+        Thread thread = threads.get(0);
+        assertNotSame(Thread.currentThread(), thread);
+        // Virtual threads from Java 21, a cached pool of daemon threads before
+        assertTrue(thread.isDaemon());
+        if (Runtime.version().feature() < 21) {
+            assertTrue(thread.getName().startsWith("llm-service-"), thread.getName());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.llmtoolkit.core.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResponseCacheTest {
+
+    record Person(String name, int age) {}
+
+    private static final ResponseCacheKey KEY = new ResponseCacheKey("OTHER/model", "prompt", "Person");
+
+    @Test
+    void testInMemoryCacheCountsHitsAndMisses() {
+        ResponseCache cache = InMemoryResponseCache.builder().build();
+
+        assertNull(cache.get(KEY, String.class));
+        cache.put(KEY, "answer");
+        assertEquals("answer", cache.get(KEY, String.class));
+
+        assertEquals(new ResponseCacheStats(1, 1, 0), cache.getStats());
+    }
+
+    @Test
+    void testInMemoryCacheEvictsBeyondMaximumSize() {
+        ResponseCache cache = InMemoryResponseCache.builder().maximumSize(1L).build();
+
+        cache.put(KEY, "first");
+        cache.put(new ResponseCacheKey("OTHER/model", "other prompt", "Person"), "second");
+
+        assertNull(cache.get(KEY, String.class));
+        assertEquals(1, cache.getStats().evictions());
+    }
+
+    @Test
+    void testFileCacheRoundTrip(@TempDir Path directory) {
+        ResponseCache cache = new FileResponseCache(directory);
+
+        assertNull(cache.get(KEY, String.class));
+        cache.put(KEY, "answer");
+        cache.put(KEY, List.of(new Person("John", 30)));
+
+        // A new instance reads what the previous one wrote
+        ResponseCache reopened = new FileResponseCache(directory);
+        assertEquals("answer", reopened.get(KEY, String.class));
+        assertEquals(
+                List.of(new Person("John", 30)),
+                reopened.get(KEY, TypeFactory.defaultInstance().constructCollectionType(List.class, Person.class)));
+    }
+}
@@ -296,4 +296,85 @@ public class ClassToStringAdditionsTest {
             return map.getOrDefault(key, mapper.apply(key));
         }
     }
+
+    // Test 13: Cached type graph gives the same descriptions for every combination of options
+    @Test
+    void testRepeatedCallsWithMixedOptions() {
+        String records = ClassToString.onlyRecords(OuterRecord.class);
+        String withMethods = ClassToString.toString(OuterRecord.class, true, false);
+        String qualified = ClassToString.toString(OuterRecord.class, false, true);
+
+        assertEquals(records, ClassToString.onlyRecords(OuterRecord.class));
+        assertEquals(withMethods, ClassToString.toString(OuterRecord.class, true, false));
+        assertEquals(qualified, ClassToString.toString(OuterRecord.class, false, true));
+
+        assertTrue(records.contains("@ComplexAnnotation(values = {\"a\"}) List<Inner> inners"));
+        assertFalse(records.contains("Helper"));
+        assertTrue(withMethods.contains("Helper helper()"));
+        assertTrue(withMethods.contains("class Helper"));
+        assertTrue(qualified.contains("OuterRecord.Inner> inners"));
+
+        // The nested record is described the same way when it is the root
+        assertTrue(records.contains(ClassToString.onlyRecords(OuterRecord.Inner.class)));
+    }
+
+    record OuterRecord(@ComplexAnnotation(values = {"a"}) List<Inner> inners) {
+        record Inner(String name) {}
+
+        public Helper helper() {
+            return new Helper();
+        }
+    }
+
+    static class Helper {}
+
+    // Test 14: Compact description keeps annotations but drops modifiers and layout
+    @Test
+    void testCompactRecords() {
+        ClassToString.Description compact = ClassToString.compactRecords(Order.class);
+
+        assertEquals(
+                """
+                record Order(@ComplexAnnotation(values = {"id"}) String id, List<Line> lines, Status status)
+                record Line(String product, int quantity, Status status)
+                enum Status {OPEN, SHIPPED, CLOSED}
+                """,
+                compact.text());
+        assertEquals(ClassToString.estimateTokens(compact.text()), compact.estimatedTokens());
+
+        String full = ClassToString.onlyRecords(Order.class);
+        assertTrue(ClassToString.estimateTokens(full) > compact.estimatedTokens());
+    }
+
+    public record Order(@ComplexAnnotation(values = {"id"}) String id, List<Line> lines, Status status) {}
+
+    @Test
+    void testEnumConstantsAreDescribedByName() {
+        assertEquals(
+                "record Ticket(Label label)\nenum Label {BUG, FEATURE}\n",
+                ClassToString.compactRecords(Ticket.class).text());
+        assertTrue(ClassToString.onlyRecords(Ticket.class).contains("BUG,"));
+    }
+
+    public record Ticket(Label label) {}
+
+    public enum Label {
+        BUG,
+        FEATURE;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    public record Line(String product, int quantity, Status status) {}
+
+    public enum Status {
+        OPEN,
+        SHIPPED,
+        CLOSED;
+
+        private final int unused = 0;
+    }
 }
@@ -0,0 +1,89 @@
+package org.llmtoolkit.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.llmtoolkit.util.json.IncrementalJsonArrayParser;
+
+public class IncrementalJsonArrayParserTest {
+
+    private static List<String> parseInChunks(String input, int chunkSize) {
+        List<String> elements = new ArrayList<>();
+        IncrementalJsonArrayParser parser = new IncrementalJsonArrayParser(elements::add);
+        for (int i = 0; i < input.length(); i += chunkSize) {
+            parser.feed(input.substring(i, Math.min(input.length(), i + chunkSize)));
+        }
+        parser.finish();
+        return elements;
+    }
+
+    @Test
+    void testObjectsAreEmittedOnClosingBrace() {
+        List<String> elements = new ArrayList<>();
+        IncrementalJsonArrayParser parser = new IncrementalJsonArrayParser(elements::add);
+
+        parser.feed("```json\n[{\"name\": \"Java\", \"tags\": [1, 2]}");
+        assertEquals(List.of("{\"name\": \"Java\", \"tags\": [1, 2]}"), elements);
+
+        parser.feed(", {\"name\": \"Go\"");
+        assertEquals(1, elements.size());
+
+        parser.feed("}]\n```");
+        assertEquals(2, elements.size());
+        assertEquals("{\"name\": \"Go\"}", elements.get(1));
+        assertTrue(parser.isClosed());
+    }
+
+    @Test
+    void testBracketsAndEscapesInsideStrings() {
+        String input = "[{\"text\": \"a } ] [ { \\\" , quoted\"}, {\"b\": \"\\\\\"}]";
+        for (int chunkSize = 1; chunkSize <= input.length(); chunkSize++) {
+            assertEquals(
+                    List.of("{\"text\": \"a } ] [ { \\\" , quoted\"}", "{\"b\": \"\\\\\"}"),
+                    parseInChunks(input, chunkSize),
+                    "chunk size " + chunkSize);
+        }
+    }
+
+    @Test
+    void testScalarElements() {
+        assertEquals(List.of("\"a\"", "2", "true", "null"), parseInChunks("[\"a\", 2,\ntrue , null]", 3));
+    }
+
+    @Test
+    void testTextAroundArrayIsIgnored() {
+        assertEquals(List.of("{\"a\": 1}"), parseInChunks("Here you go:\n[{\"a\": 1}]\nMore [text] here", 4));
+    }
+
+    @Test
+    void testTruncatedArrayDropsPartialElementOnFinish() {
+        assertEquals(List.of("{\"a\": 1}"), parseInChunks("[{\"a\": 1}, {\"b\": 2", 5));
+        assertEquals(List.of("1", "2"), parseInChunks("[1, 2, 3", 2));
+
+        IncrementalJsonArrayParser parser = new IncrementalJsonArrayParser(element -> {});
+        parser.feed("[1, 2]");
+        parser.finish();
+        assertFalse(parser.isTruncated());
+        parser = new IncrementalJsonArrayParser(element -> {});
+        parser.feed("[1, 2");
+        parser.finish();
+        assertTrue(parser.isTruncated());
+    }
+
+    @Test
+    void testEmptyAndMissingArray() {
+        assertEquals(List.of(), parseInChunks("[]", 1));
+        assertEquals(List.of(), parseInChunks("no array at all", 2));
+    }
+
+    @Test
+    void testOnlyArrayBeginningLineIsStreamed() {
+        assertEquals(List.of("1", "2"), parseInChunks("Here [as requested]:\n  [1, 2]", 3));
+        assertEquals(List.of("\"a\""), parseInChunks("[Note] see below\n```json\n[\"a\"]\n```", 2));
+        // Left to the parser of the whole answer
+        assertEquals(List.of(), parseInChunks("{\"tags\": [\"a\", \"b\"]}", 1));
+        assertEquals(List.of(), parseInChunks("Here: [{\"a\": 1}]", 4));
+    }
+}
@@ -2,13 +2,16 @@ package org.llmtoolkit.util;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -145,6 +148,15 @@ public class JSONRepairTest {
         assertEquals(mapper.readTree(expectedStructure), mapper.readTree(result), "Failed to repair: " + input);
     }
 
+    @ParameterizedTest
+    @MethodSource("provideRepairCases")
+    void testRepairToParserMatchesRepairJSON(String input, String expectedStructure) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        try (JsonParser parser = JSONRepair.repairToParser(input, mapper)) {
+            assertEquals(mapper.readTree(JSONRepair.repairJSON(input)), mapper.readTree(parser), "Failed: " + input);
+        }
+    }
+
     private static Stream<Arguments> provideRepairCases() {
         return Stream.of(
                 // Basic cases
@@ -451,6 +463,16 @@ public class JSONRepairTest {
         }
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {"{\"a\": [1, 2}", "{a:[1,2}", "[1, }"})
+    @Timeout(5)
+    void testArrayClosedByObjectEnd(String input) throws JsonProcessingException {
+        JsonNode node = new ObjectMapper().readTree(JSONRepair.repairJSON(input));
+        JsonNode array = node.isArray() ? node : node.get("a");
+        assertTrue(array.isArray(), "Failed to parse array from input: " + input);
+        assertEquals(1, array.get(0).asInt());
+    }
+
     @Test
     void testEdgeCasesWithWhitespace() {
         String[] inputs = {
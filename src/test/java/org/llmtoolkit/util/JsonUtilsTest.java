@@ -0,0 +1,153 @@
+package org.llmtoolkit.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.llmtoolkit.util.json.JsonUtils;
+import org.llmtoolkit.util.json.JsonUtils.ParseStats;
+import org.llmtoolkit.util.json.SerArray;
+import org.llmtoolkit.util.json.SerObject;
+
+public class JsonUtilsTest {
+
+    record Person(String name, int age) {}
+
+    @Test
+    void testFencedJsonIsParsedWithoutFallback() {
+        ParseStats before = JsonUtils.getParseStats();
+
+        Person person = JsonUtils.parseJsonOrYamlObject(
+                """
+                Here you go:
+                ```json
+                {"name": "John", "age": 30}
+                ```
+                """,
+                Person.class);
+
+        ParseStats after = JsonUtils.getParseStats();
+        assertEquals(new Person("John", 30), person);
+        assertEquals(before.json() + 1, after.json());
+        assertEquals(before.fallbacks(), after.fallbacks());
+    }
+
+    @Test
+    void testYamlIsParsedWithoutFallback() {
+        ParseStats before = JsonUtils.getParseStats();
+
+        Person person = JsonUtils.parseJsonOrYamlObject("name: John\nage: 30\n", Person.class);
+
+        ParseStats after = JsonUtils.getParseStats();
+        assertEquals(new Person("John", 30), person);
+        assertEquals(before.yaml() + 1, after.yaml());
+        assertEquals(before.fallbacks(), after.fallbacks());
+    }
+
+    @Test
+    void testFencedYamlArray() {
+        List<Person> people = JsonUtils.parseJsonOrYamlArray(
+                """
+                ```yaml
+                - name: John
+                  age: 30
+                - name: Jane
+                  age: 25
+                ```
+                """,
+                Person.class);
+
+        assertEquals(List.of(new Person("John", 30), new Person("Jane", 25)), people);
+    }
+
+    @Test
+    void testBrokenJsonIsRepaired() {
+        ParseStats before = JsonUtils.getParseStats();
+
+        Person person = JsonUtils.parseJsonOrYamlObject("{name: 'John', age: 30,,}", Person.class);
+
+        ParseStats after = JsonUtils.getParseStats();
+        assertEquals(new Person("John", 30), person);
+        assertEquals(before.repaired() + 1, after.repaired());
+        assertEquals(before.fallbacks() + 1, after.fallbacks());
+    }
+
+    @Test
+    void testTrimJsonTakesFirstFencedBlock() {
+        String input =
+                """
+                ```json
+                  {"a": 1}
+                ```
+                and another one
+                ```json
+                {"b": 2}
+                ```
+                """;
+        assertEquals("{\"a\": 1}", JsonUtils.trimJson(input));
+    }
+
+    @Test
+    void testTrimJsonTakesBalancedSpan() {
+        assertEquals("{\"a\": {\"b\": \"}\"}}", JsonUtils.trimJson("Result: {\"a\": {\"b\": \"}\"}} Hope {it} helps"));
+        assertEquals("[1, [2], 3]", JsonUtils.trimJson("Sure [1, [2], 3] done]"));
+        assertEquals("{\"a\": [1]}", JsonUtils.trimJson("{\"a\": [1]} [2]"));
+    }
+
+    @Test
+    void testTrimJsonUnbalanced() {
+        // Truncated value: up to the last closer, left to the repair
+        assertEquals("{\"a\": {\"b\": 1}", JsonUtils.trimJson("x {\"a\": {\"b\": 1} y"));
+        // No closer at all
+        assertEquals("text {\"a\": 1", JsonUtils.trimJson("  text {\"a\": 1  "));
+        assertEquals("no json here", JsonUtils.trimJson(" no json here\n"));
+        assertEquals("", JsonUtils.trimJson("   "));
+    }
+
+    @Test
+    @Timeout(2)
+    void testTrimJsonIsLinear() {
+        String input = "{\"a\": \"x\"} ".repeat(20_000) + "{";
+        assertEquals("{\"a\": \"x\"}", JsonUtils.trimJson(input));
+        String unbalanced = "{".repeat(50_000) + "}".repeat(10_000);
+        assertEquals(unbalanced, JsonUtils.trimJson(unbalanced));
+    }
+
+    record Team(String name, Double score, List<Person> members, List<String> notes) {}
+
+    @Test
+    void testYamlReadsBackAsSameData() {
+        Team team = new Team(
+                "yes",
+                1.5,
+                List.of(new Person("John", 30), new Person("123", 0)),
+                List.of("", "line one\nline two", "key: value # comment"));
+
+        String yaml = SerObject.from(team).toYaml();
+
+        assertEquals(
+                """
+                name: 'yes'
+                score: 1.5
+                members:
+                -   name: John
+                    age: 30
+                -   name: '123'
+                    age: 0
+                notes:
+                - ''
+                - |-
+                    line one
+                    line two
+                - 'key: value # comment'
+                """,
+                yaml);
+        assertEquals(team, SerObject.from(yaml, Team.class).toObject());
+        assertEquals(
+                "-   name: John\n    age: 30\n",
+                SerArray.from(List.of(new Person("John", 30)), Person.class).toYaml());
+
+        assertThrows(IllegalArgumentException.class, () -> JsonUtils.setYamlVerificationRate(2));
+    }
+}